@@ -5,6 +5,9 @@ import android.graphics.Color;
 
 /**
  * Animation.java - Class used to animate sprites, stored using a sprite sheet.
+ * <p>
+ *     It only describes the sprite sheet's frames: the frame being displayed by each body is kept on the body's BodyStore.
+ * </p>
  * @author  Gonçalo Leão
  * @author  José Gomes
  */
@@ -30,19 +33,14 @@ class Animation {
      */
     private int frameHeight;
 
-    /**
-     * Number of milliseconds that have passed since the last frame swap.
-     */
-    private int curTime;
-    /**
-     * Index of the frame currently being displayed.
-     */
-    private int curFrame;
-
     /**
      * A constructor for the Animation class that receives a sprite sheets, its number of frames and the amount of millis to display each frame.
+     * <p>
+     *     Without a sprite sheet (when the sprites haven't been loaded, like on a game run without a display), the frames
+     *     still advance, but have no size and are never drawn.
+     * </p>
      *
-     * @param  spriteSheet Bitmap containing the sprite sheet.
+     * @param  spriteSheet Bitmap containing the sprite sheet (may be null).
      * @param  frameCount Number of frames in the sprite sheet.
      * @param  frameTime Number of milliseconds each of the sprite sheet's frames should be displayed.
      */
@@ -50,15 +48,16 @@ class Animation {
     {
         this.spriteSheet = spriteSheet;
         this.frameCount = frameCount;
-        this.frameWidth = spriteSheet.getWidth()/frameCount;
-        this.frameHeight = spriteSheet.getHeight();
-        this.curFrame = 0;
-        this.curTime = 0;
+        if(spriteSheet != null)
+        {
+            this.frameWidth = spriteSheet.getWidth()/frameCount;
+            this.frameHeight = spriteSheet.getHeight();
+        }
         this.frameTime = frameTime;
     }
 
     /**
-     * Draws the current frame onto a specific position on the given bitmap.
+     * Draws one of the frames onto a specific position on the given bitmap.
      * <p>
      *     It should be noted that only part of the sprite may be drawn on the bitmap and, occasionally,
      *     the sprite will not be drawn at all, if the camera's vision doesn't intersect the sprite.
@@ -67,26 +66,41 @@ class Animation {
      * @param  gameMap Bitmap representing the game's image, where the sprite is to be drawn (if possible).
      * @param  spriteMinX x coordinate on the bitmap where the upper left corner of the sprite is to be drawn.
      * @param  spriteMinY y coordinate on the bitmap where the upper left corner of the sprite is to be drawn.
+     * @param  frame Index of the frame to draw.
      */
-    void drawSprite(Bitmap gameMap, int spriteMinX, int spriteMinY)
+    void drawSprite(Bitmap gameMap, int spriteMinX, int spriteMinY, int frame)
+    {
+        Camera cam = Camera.getInstance();
+        drawSprite(gameMap, spriteMinX, spriteMinY, frame, cam.getX(), cam.getY(), cam.getWidth(), cam.getHeight());
+    }
+
+    /**
+     * Draws one of the frames onto a specific position on the given bitmap, as seen by a camera with the given rectangle.
+     *
+     * @param  gameMap Bitmap representing the game's image, where the sprite is to be drawn (if possible).
+     * @param  spriteMinX x coordinate on the bitmap where the upper left corner of the sprite is to be drawn.
+     * @param  spriteMinY y coordinate on the bitmap where the upper left corner of the sprite is to be drawn.
+     * @param  frame Index of the frame to draw.
+     * @param  camMinX x coordinate of the camera's upper left corner.
+     * @param  camMinY y coordinate of the camera's upper left corner.
+     * @param  camWidth Width of the camera's rectangle.
+     * @param  camHeight Height of the camera's rectangle.
+     */
+    void drawSprite(Bitmap gameMap, int spriteMinX, int spriteMinY, int frame, int camMinX, int camMinY, int camWidth, int camHeight)
     {
         if(spriteSheet == null)
         {
             return;
         }
-        Bitmap sprite = Bitmap.createBitmap(spriteSheet,curFrame*frameWidth,0,frameWidth,frameHeight);
         int spriteMaxX = spriteMinX + frameWidth - 1;
         int spriteMaxY = spriteMinY + frameHeight - 1;
-
-        Camera cam = Camera.getInstance();
-        int camMinX = cam.getX();
-        int camMinY = cam.getY();
-        int camMaxX = camMinX + cam.getWidth() - 1;
-        int camMaxY = camMinY + cam.getHeight() - 1;
+        int camMaxX = camMinX + camWidth - 1;
+        int camMaxY = camMinY + camHeight - 1;
 
         //Check if at least part of the sprite is to be drawn on the gameMap
         if (spriteMaxX >= camMinX && spriteMaxY >= camMinY &&
                 spriteMinX <= camMaxX && spriteMinY <= camMaxY) {
+            Bitmap sprite = Bitmap.createBitmap(spriteSheet,frame*frameWidth,0,frameWidth,frameHeight);
             //Find out which parts of the sprite should be drawn
             int srcMinX = Math.max(spriteMinX, camMinX) - spriteMinX;
             int srcMinY = Math.max(spriteMinY, camMinY) - spriteMinY;
@@ -111,20 +125,23 @@ class Animation {
     }
 
     /**
-     * Update the animation's frame.
+     * Returns the number of frames in the sprite sheet.
      *
-     * @param  deltaT Time (in millis) since the last update.
+     * @return Number of frames.
      */
-    void update(long deltaT)
+    int getFrameCount()
     {
-        curTime += deltaT;
-        if(curTime >= frameTime) {
-            curTime = 0;
-            curFrame++;
-            if (curFrame == frameCount) {
-                curFrame = 0;
-            }
-        }
+        return this.frameCount;
+    }
+
+    /**
+     * Returns the number of milliseconds each frame should be displayed.
+     *
+     * @return Frame time (in millis).
+     */
+    long getFrameTime()
+    {
+        return this.frameTime;
     }
 
     /**
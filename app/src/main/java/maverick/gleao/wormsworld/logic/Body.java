@@ -1,87 +1,67 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
-import android.graphics.Rect;
 
 import java.util.ArrayList;
 import java.util.Random;
 
 /**
  * Body.java - class used to represent a physical object, which obeys the laws of physics.
+ * <p>
+ *     A body is a view over its slot of a BodyStore, where its state is kept. Bodies of the same kind can share a store,
+ *     so they are updated together.
+ * </p>
  * @author  Gonçalo Leão
  * @author  José Gomes
  */
 abstract class Body implements Drawable {
     /**
-     * Body's x position.
+     * Enumeration of the ways a body can move.
      */
-    private double x;
-    /**
-     * Body's y position.
-     */
-    private double y;
-    /**
-     * Body's x velocity.
-     */
-    private double vx;
-    /**
-     * Body's y velocity.
-     */
-    private double vy;
-    /**
-     * Body's x acceleration.
-     */
-    private double ax;
-    /**
-     * Body's y acceleration.
-     */
-    private double ay;
+    public enum BodyType
+    {
+        /**
+         * The body never moves after being placed (its physics are never updated).
+         */
+        STATIC,
+        /**
+         * The body is moved by velocities set by the game (like the boo), so it never falls asleep.
+         */
+        KINEMATIC,
+        /**
+         * The body is moved by the laws of physics, and falls asleep while it rests on the map's ground.
+         */
+        DYNAMIC
+    }
 
     /**
-     * Body's maximum x velocity.
+     * Store that holds the body's state (position, velocity, acceleration, limits and animation frame).
      */
-    private double maxVx;
+    private final BodyStore store;
     /**
-     * Body's maximum y velocity.
+     * Index of the body's slot on the store.
      */
-    private double maxVy;
+    private final int slot;
 
     /**
-     * Body's x acceleration due to friction.
+     * Way the body's movement is stopped by collisions.
      */
-    private double xAten;
+    private Game.CollisionMode collisionMode = Game.CollisionMode.STEPPED;
 
     /**
-     * Body's y acceleration due to gravity.
+     * Trajectory points of the body's last movement, stored as consecutive (x,y) pairs.
      */
-    private double gravity;
+    private int[] trajPoints = new int[0];
 
     /**
-     * Body's former x position.
-     */
-    private double oldX;
-    /**
-     * Body's former y position.
+     * Maximum distance (in pixels) a body that starts a swept movement inside the map is pushed to get out of it.
      */
-    private double oldY;
+    private static final int maxDepenetration = 8;
 
-    /**
-     * Indicates that a body is transparent (in that case, collisions with the map are to be ignored).
-     */
-    private boolean transparent;
-
-    /**
-     * Number of times a body can jump.
-     */
-    private int n_jumps;
     /**
      * Maximum number of times a body can jump.
      */
     private static final int max_jumps = 2;
-    /**
-     * Object used to control the body's animation.
-     */
-    private Animation anim;
 
     /**
      * Value to be added to the x velocity when the body moves.
@@ -103,15 +83,7 @@ abstract class Body implements Drawable {
      * @param  gravity Body's y acceleration due to gravity.
      */
     Body(double x, double y, double maxVx, double maxVy, double xAten, double gravity) {
-        this.x = x;
-        this.y = y;
-        this.maxVx = maxVx;
-        this.maxVy = maxVy;
-        this.xAten = xAten;
-        this.gravity = gravity;
-        this.transparent = false;
-        this.n_jumps = this.max_jumps;
-        initAnimation();
+        this(new BodyStore(1),x,y,maxVx,maxVy,xAten,gravity,false);
     }
 
     /**
@@ -126,8 +98,51 @@ abstract class Body implements Drawable {
      * @param  transparent Indicates that a body is transparent.
      */
     Body(double x, double y, double maxVx, double maxVy, double xAten, double gravity, boolean transparent) {
-        this(x,y,maxVx,maxVy,xAten,gravity);
-        this.transparent = transparent;
+        this(new BodyStore(1),x,y,maxVx,maxVy,xAten,gravity,transparent);
+    }
+
+    /**
+     * Constructor for a body whose state is kept on a store shared with other bodies of the same kind.
+     *
+     * @param  store Store where the body's state is kept (a slot is reserved for the body).
+     * @param  x Initial x coordinate of the body on the map.
+     * @param  y Initial y coordinate of the body on the map.
+     * @param  maxVx Body's maximum x velocity.
+     * @param  maxVy Body's maximum y velocity.
+     * @param  xAten Body's x acceleration due to friction.
+     * @param  gravity Body's y acceleration due to gravity.
+     * @param  transparent Indicates that a body is transparent.
+     */
+    Body(BodyStore store, double x, double y, double maxVx, double maxVy, double xAten, double gravity, boolean transparent) {
+        this.store = store;
+        this.slot = store.allocate();
+        store.x[slot] = x;
+        store.y[slot] = y;
+        store.vx[slot] = 0;
+        store.vy[slot] = 0;
+        store.ax[slot] = 0;
+        store.ay[slot] = 0;
+        store.oldX[slot] = 0;
+        store.oldY[slot] = 0;
+        store.previousX[slot] = x;
+        store.previousY[slot] = y;
+        store.maxVx[slot] = maxVx;
+        store.maxVy[slot] = maxVy;
+        store.xAten[slot] = xAten;
+        store.gravity[slot] = gravity;
+        store.transparent[slot] = transparent;
+        store.nJumps[slot] = this.max_jumps;
+        store.types[slot] = getBodyType();
+        store.sleeping[slot] = false;
+        initAnimation();
+    }
+
+    /**
+     * Releases the body's slot on its store, after the body has been removed from the game (the body must not be used afterwards).
+     */
+    void release()
+    {
+        store.release(slot);
     }
 
     /**
@@ -138,135 +153,322 @@ abstract class Body implements Drawable {
      * @param  collidables Bodies that this body must take into account during collision detection.
      */
     void updatePos(long deltaT, Map map, ArrayList<Body> collidables) {
+        //Inert bodies don't move
+        if (store.types[slot] == BodyType.STATIC || store.sleeping[slot]) {
+            store.oldX[slot] = store.x[slot];
+            store.oldY[slot] = store.y[slot];
+            return;
+        }
+        integrate(deltaT, map, collidables);
+        updateSleeping(map);
+    }
+
+    /**
+     * Applies the laws of physics to the body, moving it until it collides with the map or with a group of other bodies.
+     *
+     * @param  deltaT Time (in millis) since the last update.
+     * @param  map The game's map.
+     * @param  collidables Bodies that this body must take into account during collision detection.
+     */
+    private void integrate(long deltaT, Map map, ArrayList<Body> collidables) {
         //Store the old values
-        this.oldX = this.x;
-        this.oldY = this.y;
+        store.oldX[slot] = store.x[slot];
+        store.oldY[slot] = store.y[slot];
+
+        //Update the velocity and position
+        boolean onGround = isOnGround(map,collidables);
+        if (store.isFixedPoint()) {
+            store.integrateFixed(slot, deltaT, onGround);
+        }
+        else {
+            integrateFloatingPoint(deltaT, onGround);
+        }
 
+        if (collisionMode == Game.CollisionMode.SWEPT) {
+            resolveSwept(map, collidables);
+            return;
+        }
+
+        //Deterine if the body colides before reaching its goal (the points are tested without moving the body)
+        int pointCount = computeTrajPoints();
+        if (pointCount > 1) {
+            //Last trajectory point reached without colliding
+            int lastX = trajPoints[0];
+            int lastY = trajPoints[1];
+
+            //Last trajectory point known not to collide with the map (using the map's ground index and distance field)
+            int mapClearUntil = 0;
+            int last = 2 * (pointCount - 1);
+            if (trajPoints[last] == lastX && trajPoints[last + 1] > lastY)
+            {
+                //Falling straight down: the i-th point is i pixels below the first one
+                mapClearUntil = Math.max(0, getDropDistance(map, lastX, lastY));
+            }
+            boolean collision = false;
+            for (int i = 1; i < pointCount; i++) {
+                int pointX = trajPoints[2 * i];
+                int pointY = trajPoints[2 * i + 1];
+                if (i > mapClearUntil)
+                {
+                    int clearance = getClearance(map, pointX, pointY);
+                    if (clearance >= 0)
+                    {
+                        mapClearUntil = i + clearance;
+                    }
+                }
+                collision = (i > mapClearUntil && colidesWith(map, pointX, pointY)) || colidesWith(collidables, pointX, pointY);
+                if (collision)
+                {
+                    if(pointX != lastX)
+                    {
+                        stopX();
+                    }
+                    if(pointY != lastY)
+                    {
+                        stopY();
+                    }
+                    break;
+                }
+                lastX = pointX;
+                lastY = pointY;
+            }
+
+            //Stop on the last point reached
+            store.x[slot] = lastX;
+            store.y[slot] = lastY;
+            if (collision)
+            {
+                restoreJumps();
+            }
+        }
+    }
+
+    /**
+     * Updates the body's velocity and position using floating-point arithmetic.
+     *
+     * @param  deltaT Time (in millis) since the last update.
+     * @param  onGround Boolean that indicates if the body is touching the ground (otherwise, gravity is applied).
+     */
+    private void integrateFloatingPoint(long deltaT, boolean onGround) {
         //Update the velocity
-        this.vx += (deltaT / 1000.0) * this.ax;
-        if (this.vx > this.maxVx) {
-            this.vx = this.maxVx;
+        store.vx[slot] += (deltaT / 1000.0) * store.ax[slot];
+        if (store.vx[slot] > store.maxVx[slot]) {
+            store.vx[slot] = store.maxVx[slot];
         }
-        if (this.vx < -this.maxVx) {
-            this.vx = -this.maxVx;
+        if (store.vx[slot] < -store.maxVx[slot]) {
+            store.vx[slot] = -store.maxVx[slot];
         }
 
-        if(this.vx > 0)
+        if(store.vx[slot] > 0)
         {
-            this.vx = Math.max(0,this.vx - this.xAten*(deltaT / 1000.0));
+            store.vx[slot] = Math.max(0,store.vx[slot] - store.xAten[slot]*(deltaT / 1000.0));
         }
-        else if(this.vx < 0)
+        else if(store.vx[slot] < 0)
         {
-            this.vx = Math.min(0,this.vx + this.xAten*(deltaT / 1000.0));
+            store.vx[slot] = Math.min(0,store.vx[slot] + store.xAten[slot]*(deltaT / 1000.0));
         }
 
         //Update the y acceleration (gravity)
-        if (!isOnGround(map,collidables))
+        if (!onGround)
         {
-            this.ay = this.gravity;
+            store.ay[slot] = store.gravity[slot];
         }
 
-        this.vy += (deltaT / 1000.0) * this.ay;
-        if (this.vy > this.maxVy) {
-            this.vy = this.maxVy;
+        store.vy[slot] += (deltaT / 1000.0) * store.ay[slot];
+        if (store.vy[slot] > store.maxVy[slot]) {
+            store.vy[slot] = store.maxVy[slot];
         }
-        if (this.vy < -this.maxVy) {
-            this.vy = -this.maxVy;
+        if (store.vy[slot] < -store.maxVy[slot]) {
+            store.vy[slot] = -store.maxVy[slot];
         }
 
         //Update the position
-        this.x += (deltaT / 1000.0) * this.vx;
-        this.y += (deltaT / 1000.0) * this.vy;
-
-        //Deterine if the body colides before reaching its goal
-        ArrayList<Vec2<Integer> > trajPoints = getTrajPoints();
-        if (trajPoints.size() > 1) {
-            setX(trajPoints.get(0).getX());
-            setY(trajPoints.get(0).getY());
-
-            for (int i = 1; i < trajPoints.size(); i++) {
-                Vec2<Integer> point = trajPoints.get(i);
-                setX(point.getX());
-                setY(point.getY());
-                boolean collision = colidesWith(map,collidables);
-                if (collision)
-                {
-                    if(movedX())
-                    {
-                        stopX();
-                    }
-                    if(movedY())
-                    {
-                        stopY();
-                    }
-                    resetPos();
-                    restoreJumps();
-                    break;
-                }
-            }
+        store.x[slot] += (deltaT / 1000.0) * store.vx[slot];
+        store.y[slot] += (deltaT / 1000.0) * store.vy[slot];
+    }
+
+    /**
+     * Puts a dynamic body to sleep if it is resting on the map's ground.
+     * <p>
+     *     A body at rest on the ground keeps a null velocity and acceleration, and the map never changes, so its
+     *     following updates wouldn't move it. It sleeps until it is moved by the game (see wake).
+     * </p>
+     *
+     * @param  map The game's map.
+     */
+    private void updateSleeping(Map map)
+    {
+        if (store.types[slot] == BodyType.DYNAMIC && store.vx[slot] == 0 && store.vy[slot] == 0
+                && store.ax[slot] == 0 && store.ay[slot] == 0 && isOnGround(map))
+        {
+            store.sleeping[slot] = true;
         }
     }
 
     /**
-     * Stops a body in the x axis (sets to 0 its x velocity and acceleration).
+     * Wakes up the body, if it was sleeping, so its physics are updated again.
      */
-    void stopX() {
-        this.vx = 0;
-        this.ax = 0;
+    void wake()
+    {
+        store.sleeping[slot] = false;
     }
 
     /**
-     * Stops a body in the y axis (sets to 0 its y velocity and acceleration).
+     * Enables/Disables the deterministic fixed-point integration of the body (and of every body that shares its store).
+     *
+     * @param  fixedPoint Boolean that indicates if the fixed-point integration should be used.
      */
-    void stopY()
+    void setFixedPoint(boolean fixedPoint)
     {
-        this.vy=0;
-        this.ay=0;
+        store.setFixedPoint(fixedPoint);
     }
 
     /**
-     * Resets a body's x and y position.
+     * Indicates if the body is asleep.
+     *
+     * @return Boolean that indicates if the body is sleeping.
      */
-    private void resetPos()
+    boolean isSleeping()
     {
-        resetX();
-        resetY();
+        return store.sleeping[slot];
     }
 
     /**
-     * Resets a body's x position.
+     * Returns the way the body moves, which never changes during the body's life.
+     * <p>
+     *     Bodies are dynamic by default.
+     * </p>
+     *
+     * @return The body's type.
      */
-    private void resetX()
+    protected BodyType getBodyType()
     {
-        this.x = this.oldX;
+        return BodyType.DYNAMIC;
     }
 
     /**
-     * Resets a body's y position.
+     * Moves the body from its former to its current position, first along the x axis and then along the y axis,
+     * stopping each movement where it would collide with the map or with a group of other bodies.
+     * <p>
+     *     A body that starts inside the map is first pushed to the nearest free position (up to maxDepenetration pixels
+     *     away, trying up, left, right and down). If there is none, the parts of the body that overlap the map don't
+     *     stop its movement, so it is never stuck.
+     * </p>
+     *
+     * @param  map The game's map.
+     * @param  collidables The bodies used for the collision test.
      */
-    private void resetY()
+    private void resolveSwept(Map map, ArrayList<Body> collidables)
     {
-        this.y = this.oldY;
+        int xi = (int) Math.round(store.oldX[slot]);
+        int yi = (int) Math.round(store.oldY[slot]);
+        int dx = (int) Math.round(store.x[slot]) - xi;
+        int dy = (int) Math.round(store.y[slot]) - yi;
+        boolean collided = false;
+
+        if (colidesWith(map, xi, yi))
+        {
+            for (int d = 1; d <= maxDepenetration; d++)
+            {
+                int[] offsets = {0, -d, -d, 0, d, 0, 0, d};
+                int k = 0;
+                while (k < offsets.length && colidesWith(map, xi + offsets[k], yi + offsets[k + 1]))
+                {
+                    k += 2;
+                }
+                if (k < offsets.length)
+                {
+                    //The movement starts from the free position
+                    xi += offsets[k];
+                    yi += offsets[k + 1];
+                    store.x[slot] += offsets[k];
+                    store.y[slot] += offsets[k + 1];
+                    break;
+                }
+            }
+        }
+
+        int allowedX = getSweepDistance(map, collidables, xi, yi, dx, 0);
+        if (allowedX < Math.abs(dx))
+        {
+            store.x[slot] = xi + Integer.signum(dx) * allowedX;
+            stopX();
+            collided = true;
+        }
+
+        int allowedY = getSweepDistance(map, collidables, getRoundedX(), yi, 0, dy);
+        if (allowedY < Math.abs(dy))
+        {
+            store.y[slot] = yi + Integer.signum(dy) * allowedY;
+            stopY();
+            collided = true;
+        }
+
+        if (collided)
+        {
+            restoreJumps();
+        }
     }
 
     /**
-     * Indicates if the body's last movement altered its position along the x axis.
+     * Returns how far the body can move from a given position, along one of the axes, without colliding with the map
+     * or with a group of other bodies.
      *
-     * @return Boolean that indicates if the body moved horizontally.
+     * @param  map The game's map.
+     * @param  collidables The bodies used for the collision test.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @param  dx Movement along the x axis (it must be 0 if dy isn't).
+     * @param  dy Movement along the y axis (it must be 0 if dx isn't).
+     * @return Number of pixels the body can move along the given direction, from 0 up to the movement's length.
      */
-    private boolean movedX()
+    private int getSweepDistance(Map map, ArrayList<Body> collidables, int x, int y, int dx, int dy)
     {
-        return (x != oldX);
+        CollisionShape shape = getCollisionShape();
+        int allowed = Math.abs(dx + dy);
+        if (!store.transparent[slot])
+        {
+            allowed = shape.sweep(map, x, y, dx, dy);
+        }
+        for (int i = 0; i < collidables.size() && allowed > 0; i++)
+        {
+            Body body = collidables.get(i);
+            if (body != this)
+            {
+                int bodyAllowed = shape.sweep(x, y, dx, dy, body.getCollisionShape(), body.getRoundedX(), body.getRoundedY());
+                allowed = Math.min(allowed, bodyAllowed);
+            }
+        }
+        return allowed;
     }
 
     /**
-     * Indicates if the body's last movement altered its position along the y axis.
+     * Stops a body in the x axis (sets to 0 its x velocity and acceleration).
+     */
+    void stopX() {
+        store.vx[slot] = 0;
+        store.ax[slot] = 0;
+    }
+
+    /**
+     * Stops a body in the y axis (sets to 0 its y velocity and acceleration).
+     */
+    void stopY()
+    {
+        store.vy[slot]=0;
+        store.ay[slot]=0;
+    }
+
+    /**
+     * Combines the body's position with a hash.
      *
-     * @return Boolean that indicates if the body moved vertically.
+     * @param  hash Hash to combine the position with.
+     * @return The new hash.
      */
-    private boolean movedY()
+    long hashPosition(long hash)
     {
-        return (y != oldY);
+        hash = 31 * hash + Double.doubleToLongBits(store.x[slot]);
+        return 31 * hash + Double.doubleToLongBits(store.y[slot]);
     }
 
     /**
@@ -276,7 +478,7 @@ abstract class Body implements Drawable {
      */
     protected double getX()
     {
-        return x;
+        return store.x[slot];
     }
 
     /**
@@ -286,7 +488,37 @@ abstract class Body implements Drawable {
      */
     protected double getY()
     {
-        return y;
+        return store.y[slot];
+    }
+
+    /**
+     * Selects the way the body's movement is stopped by collisions.
+     *
+     * @param  collisionMode The collision mode.
+     */
+    void setCollisionMode(Game.CollisionMode collisionMode)
+    {
+        this.collisionMode = collisionMode;
+    }
+
+    /**
+     * Returns the body's x position, rounded to the nearest pixel (as used by the collision tests).
+     *
+     * @return Rounded x coordinate of the body.
+     */
+    protected int getRoundedX()
+    {
+        return (int) Math.round(store.x[slot]);
+    }
+
+    /**
+     * Returns the body's y position, rounded to the nearest pixel (as used by the collision tests).
+     *
+     * @return Rounded y coordinate of the body.
+     */
+    protected int getRoundedY()
+    {
+        return (int) Math.round(store.y[slot]);
     }
 
     /**
@@ -296,8 +528,9 @@ abstract class Body implements Drawable {
      */
     protected void setX(int x)
     {
-        this.oldX = this.x;
-        this.x = (double)x;
+        wake();
+        store.oldX[slot] = store.x[slot];
+        store.x[slot] = (double)x;
     }
 
     /**
@@ -307,8 +540,9 @@ abstract class Body implements Drawable {
      */
     protected void setY(int y)
     {
-        this.oldY = this.y;
-        this.y = (double)y;
+        wake();
+        store.oldY[slot] = store.y[slot];
+        store.y[slot] = (double)y;
     }
 
     /**
@@ -319,20 +553,53 @@ abstract class Body implements Drawable {
      */
     boolean colidesWith(Map m)
     {
-        if(transparent)
+        return colidesWith(m, getRoundedX(), getRoundedY());
+    }
+
+    /**
+     * Indicates if the body would collide with the map if it was at a given position (the body isn't moved).
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the position to test.
+     * @param  y y coordinate of the position to test.
+     * @return Boolean that indicates if the body would collide with the map.
+     */
+    boolean colidesWith(Map m, int x, int y)
+    {
+        if(store.transparent[slot])
         {
             return false;
         }
-        ArrayList<Rect> tRects = getCollisionRectangles();
+        return getCollisionShape().collidesWith(m, x, y);
+    }
 
-        for(int i = 0; i < tRects.size(); i++)
+    /**
+     * Returns how many steps (of one pixel along each axis) the body can take from its position without colliding with the map.
+     *
+     * @param  m The game's map.
+     * @return Number of steps the body can take without colliding with the map (negative if it may already be colliding).
+     */
+    int getClearance(Map m)
+    {
+        return getClearance(m, getRoundedX(), getRoundedY());
+    }
+
+    /**
+     * Returns how many steps (of one pixel along each axis) the body could take from a given position without colliding
+     * with the map (the body isn't moved).
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the position to test.
+     * @param  y y coordinate of the position to test.
+     * @return Number of steps the body can take without colliding with the map (negative if it may already be colliding).
+     */
+    int getClearance(Map m, int x, int y)
+    {
+        if(store.transparent[slot])
         {
-            if(m.collidesWith(tRects.get(i)))
-            {
-                return true;
-            }
+            return Integer.MAX_VALUE;
         }
-        return false;
+        return getCollisionShape().getClearance(m, x, y);
     }
 
     /**
@@ -342,26 +609,26 @@ abstract class Body implements Drawable {
      * @return Boolean that indicates if the body collides with the other body.
      */
     boolean colidesWith(Body b)
+    {
+        return colidesWith(b, getRoundedX(), getRoundedY());
+    }
+
+    /**
+     * Indicates if this body would collide with another body if it was at a given position (neither body is moved).
+     *
+     * @param  b The body used for the collision test.
+     * @param  x x coordinate of the position to test.
+     * @param  y y coordinate of the position to test.
+     * @return Boolean that indicates if the body would collide with the other body.
+     */
+    boolean colidesWith(Body b, int x, int y)
     {
         //An object cannot collide with itself!
         if(this == b)
         {
             return false;
         }
-        ArrayList<Rect> tRects = getCollisionRectangles();
-        ArrayList<Rect> wRects = b.getCollisionRectangles();
-
-        for(int i = 0; i < tRects.size(); i++)
-        {
-            for(int j = 0; j < wRects.size(); j++)
-            {
-                if(Rect.intersects(tRects.get(i),wRects.get(j)))
-                {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return getCollisionShape().intersects(x, y, b.getCollisionShape(), b.getRoundedX(), b.getRoundedY());
     }
 
     /**
@@ -372,9 +639,22 @@ abstract class Body implements Drawable {
      */
     boolean colidesWith(ArrayList<Body> collidables)
     {
-        for(Body body : collidables)
+        return colidesWith(collidables, getRoundedX(), getRoundedY());
+    }
+
+    /**
+     * Indicates if this body would collide with any of the bodies of the given array if it was at a given position (no body is moved).
+     *
+     * @param  collidables The bodies used for the collision test.
+     * @param  x x coordinate of the position to test.
+     * @param  y y coordinate of the position to test.
+     * @return Boolean that indicates if the body would collide with any of the other bodies.
+     */
+    boolean colidesWith(ArrayList<Body> collidables, int x, int y)
+    {
+        for(int i = 0; i < collidables.size(); i++)
         {
-            if(colidesWith(body))
+            if(colidesWith(collidables.get(i), x, y))
             {
                 return true;
             }
@@ -391,41 +671,35 @@ abstract class Body implements Drawable {
      */
     boolean colidesWith(Map map, ArrayList<Body> collidables)
     {
-        if(colidesWith(map))
-        {
-            return true;
-        }
-
-        for(Body body : collidables)
-        {
-            if(colidesWith(body))
-            {
-                return true;
-            }
-        }
-        return false;
+        return colidesWith(map, getRoundedX(), getRoundedY()) || colidesWith(collidables, getRoundedX(), getRoundedY());
     }
 
     /**
-     * Returns an array with the body's collision rectangles.
+     * Returns the body's collision shape, relative to its position.
      *
-     * @return Array containing the body's collision rectangles.
+     * @return The body's collision shape.
      */
-    protected abstract ArrayList<Rect> getCollisionRectangles();
+    protected abstract CollisionShape getCollisionShape();
 
     /**
-     * Returns an array with the body's trajectory points, between its former and current position.
+     * Computes the body's trajectory points, between its former and current position, storing them on trajPoints.
      *
-     * @return Array with the body's trajectory points.
+     * @return Number of trajectory points.
      */
-    ArrayList<Vec2<Integer> > getTrajPoints() //using MidPoint's line algorithm
+    int computeTrajPoints() //using MidPoint's line algorithm
     {
-        int xi = (int) Math.round(oldX);
-        int yi = (int) Math.round(oldY);
-        int xf = (int) Math.round(x);
-        int yf = (int) Math.round(y);
-
-        return MidPoint.apply(xi,yi,xf,yf);
+        int xi = (int) Math.round(store.oldX[slot]);
+        int yi = (int) Math.round(store.oldY[slot]);
+        int xf = (int) Math.round(store.x[slot]);
+        int yf = (int) Math.round(store.y[slot]);
+
+        //The array is reused between updates, only growing when a longer trajectory comes up
+        int count = MidPoint.countPoints(xi,yi,xf,yf);
+        if(trajPoints.length < 2 * count)
+        {
+            trajPoints = new int[2 * count];
+        }
+        return MidPoint.apply(xi,yi,xf,yf,trajPoints);
     }
 
     /**
@@ -436,17 +710,52 @@ abstract class Body implements Drawable {
      */
     boolean isOnGround(Map m)
     {
-        if(transparent)
+        return isOnGround(m, getRoundedX(), getRoundedY());
+    }
+
+    /**
+     * Indicates if the body would be touching the ground on the map if it was at a given position (the body isn't moved).
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the position to test.
+     * @param  y y coordinate of the position to test.
+     * @return Boolean that indicates if the body would be touching the ground on the map.
+     */
+    boolean isOnGround(Map m, int x, int y)
+    {
+        if(store.transparent[slot])
         {
             return false;
         }
-        setY((int)Math.round(getY()) + 1);
-
-        boolean colides = colidesWith(m);
+        return getCollisionShape().isOnGround(m, x, y);
+    }
 
-        resetY();
+    /**
+     * Returns how many pixels the body can fall, from its position, without colliding with the map.
+     *
+     * @param  m The game's map.
+     * @return Number of pixels the body can fall (negative if it is already colliding with the map).
+     */
+    int getDropDistance(Map m)
+    {
+        return getDropDistance(m, getRoundedX(), getRoundedY());
+    }
 
-        return colides;
+    /**
+     * Returns how many pixels the body could fall, from a given position, without colliding with the map (the body isn't moved).
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the position to test.
+     * @param  y y coordinate of the position to test.
+     * @return Number of pixels the body can fall (negative if it would already be colliding with the map).
+     */
+    int getDropDistance(Map m, int x, int y)
+    {
+        if(store.transparent[slot])
+        {
+            return Integer.MAX_VALUE;
+        }
+        return getCollisionShape().getDropDistance(m, x, y);
     }
 
     /**
@@ -457,13 +766,7 @@ abstract class Body implements Drawable {
      */
     boolean isOnGround(Body b)
     {
-        setY((int)Math.round(getY()) + 1);
-
-        boolean colides = colidesWith(b);
-
-        resetY();
-
-        return colides;
+        return colidesWith(b, getRoundedX(), getRoundedY() + 1);
     }
 
     /**
@@ -480,9 +783,9 @@ abstract class Body implements Drawable {
             return true;
         }
 
-        for(Body body : collidables)
+        for(int i = 0; i < collidables.size(); i++)
         {
-            if(isOnGround(body))
+            if(isOnGround(collidables.get(i)))
             {
                 return true;
             }
@@ -491,20 +794,30 @@ abstract class Body implements Drawable {
     }
 
     /**
-     * Randomly places the body on the map, taking into account collision with the map and with an array of bodies.
+     * Randomly places the body on the map, using a given random number generator, taking into account collision with
+     * the map and with the bodies already placed during a session, and adds it to the session.
      *
-     * @param  map The game's map.
-     * @param  collidables The bodies used for the collision test.
+     * @param  session The session where the game's bodies are being placed.
+     * @param  rand Random number generator used to choose the body's position.
      */
-    void placeBody(Map map, ArrayList<Body> collidables)
+    void placeBody(SpawnSession session, Random rand)
     {
-        Random rand = new Random();
-        do {
-            int x = rand.nextInt(map.getMapWidth());
-            int y = rand.nextInt(map.getMapHeight());
+        //Solid bodies are placed on one of the map's free standing positions for their shape
+        if(store.transparent[slot] || !session.draw(this, rand))
+        {
+            Map map = session.getMap();
+            ArrayList<Body> collidables = session.getBodies();
+            int x;
+            int y;
+            do {
+                x = rand.nextInt(map.getMapWidth());
+                y = rand.nextInt(map.getMapHeight());
+            } while (colidesWith(map,x,y) || colidesWith(collidables,x,y) || (!(isOnGround(map,x,y)) && !store.transparent[slot]));
             setX(x);
             setY(y);
-        } while (colidesWith(map,collidables) || (!(isOnGround(map)) && !transparent));
+        }
+        savePosition();
+        session.add(this);
     }
 
     /**
@@ -514,7 +827,8 @@ abstract class Body implements Drawable {
      */
     void move(boolean right)
     {
-        this.vx += move_x * (right ? 1 : -1);
+        wake();
+        store.vx[slot] += move_x * (right ? 1 : -1);
     }
 
     /**
@@ -522,10 +836,11 @@ abstract class Body implements Drawable {
      */
     void jump()
     {
-        if(this.n_jumps > 0)
+        if(store.nJumps[slot] > 0)
         {
-            this.vy -= jump_y;
-            this.n_jumps--;
+            wake();
+            store.vy[slot] -= jump_y;
+            store.nJumps[slot]--;
         }
     }
 
@@ -534,7 +849,7 @@ abstract class Body implements Drawable {
      */
     void restoreJumps()
     {
-        this.n_jumps = this.max_jumps;
+        store.nJumps[slot] = this.max_jumps;
     }
 
     /**
@@ -545,7 +860,7 @@ abstract class Body implements Drawable {
      */
     boolean isToTheLeftOf(Body b)
     {
-        return (this.x < b.getX());
+        return (store.x[slot] < b.getX());
     }
 
     /**
@@ -556,7 +871,7 @@ abstract class Body implements Drawable {
      */
     boolean isToTheRightOf(Body b)
     {
-        return (this.x > b.getX());
+        return (store.x[slot] > b.getX());
     }
 
     /**
@@ -567,11 +882,12 @@ abstract class Body implements Drawable {
      */
     void follow(Body b, double V)
     {
-        double dirX = b.getX() - this.x;
-        double dirY = b.getY() - this.y;
+        double dirX = b.getX() - store.x[slot];
+        double dirY = b.getY() - store.y[slot];
         double norm = Math.sqrt(dirX*dirX + dirY*dirY);
-        this.vx = V*dirX/norm;
-        this.vy = V*dirY/norm;
+        wake();
+        store.vx[slot] = V*dirX/norm;
+        store.vy[slot] = V*dirY/norm;
     }
 
     /**
@@ -582,8 +898,8 @@ abstract class Body implements Drawable {
         Camera cam = Camera.getInstance();
         int width = cam.getWidth();
         int height = cam.getHeight();
-        cam.setX((int)Math.round(this.x - width/2));
-        cam.setY((int)Math.round(this.y - height/2));
+        cam.setX((int)Math.round(store.x[slot] - width/2));
+        cam.setY((int)Math.round(store.y[slot] - height/2));
     }
 
     /**
@@ -594,7 +910,7 @@ abstract class Body implements Drawable {
      */
     boolean isOutofYBounds(int maxY)
     {
-        return (this.y > maxY);
+        return (store.y[slot] > maxY);
     }
 
     /**
@@ -602,21 +918,35 @@ abstract class Body implements Drawable {
      */
     protected void initAnimation()
     {
-        this.anim = new Animation(getSpriteSheet(),getFrameCount(),getFrameTime());
+        store.animations[slot] = new Animation(getSpriteSheet(),getFrameCount(),getFrameTime());
+        store.curFrame[slot] = 0;
+        store.curTime[slot] = 0;
     }
 
     /**
      * Updates the body's animation.
+     * <p>
+     *     The bodies kept on a shared store are usually animated all at once, with BodyStore.updateAnimations.
+     * </p>
      *
      * @param  deltaT Time (in millis) since the last update.
      */
     void updateAnim(long deltaT)
     {
-        if(anim != null)
+        if(store.animated[slot] && store.animations[slot] != null)
         {
-            anim.update(deltaT);
+            store.updateAnimation(slot, deltaT);
         }
+    }
 
+    /**
+     * Starts or stops the body's animation (a stopped animation keeps showing its current frame).
+     *
+     * @param  animated Boolean that indicates if the animation should run.
+     */
+    void setAnimated(boolean animated)
+    {
+        store.animated[slot] = animated;
     }
 
     /**
@@ -626,7 +956,32 @@ abstract class Body implements Drawable {
      */
     public void draw(Bitmap gameMap)
     {
-        anim.drawSprite(gameMap,(int)Math.round(this.x),(int)Math.round(this.y));
+        store.animations[slot].drawSprite(gameMap,(int)Math.round(store.x[slot]),(int)Math.round(store.y[slot]),store.curFrame[slot]);
+    }
+
+    /**
+     * Adds the body's sprite to a render snapshot, between its positions at the end of the last two physics steps.
+     *
+     * @param  snapshot Snapshot where the sprite is added.
+     * @param  alpha Fraction of the way from the previous to the current position (0 for the previous position, 1 for the current one).
+     */
+    void addSprite(RenderSnapshot snapshot, double alpha)
+    {
+        double previousX = store.previousX[slot];
+        double previousY = store.previousY[slot];
+        double drawX = previousX + (store.x[slot] - previousX) * alpha;
+        double drawY = previousY + (store.y[slot] - previousY) * alpha;
+        snapshot.addSprite(store.animations[slot],store.curFrame[slot],(int)Math.round(drawX),(int)Math.round(drawY));
+    }
+
+    /**
+     * Stores the body's current position as its position at the end of the previous physics step (it must be called
+     * before each step that moves the body).
+     */
+    void savePosition()
+    {
+        store.previousX[slot] = store.x[slot];
+        store.previousY[slot] = store.y[slot];
     }
 
     /**
@@ -636,7 +991,7 @@ abstract class Body implements Drawable {
      */
     protected int getSpriteWidth()
     {
-        return anim.getSpriteWidth();
+        return store.animations[slot].getSpriteWidth();
     }
 
     /**
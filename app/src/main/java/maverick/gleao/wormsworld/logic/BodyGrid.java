@@ -0,0 +1,182 @@
+package maverick.gleao.wormsworld.logic;
+
+import java.util.ArrayList;
+
+/**
+ * BodyGrid.java - class used to index bodies by their position on the map, on a uniform grid of square cells.
+ * <p>
+ *     Each body is stored on every cell its collision shape's bounding box touches, so the bodies that may collide with
+ *     another one are found by reading only the cells around it. It is meant for bodies that don't move (like coins,
+ *     stars and the flag): a body must be removed before it is moved and added again afterwards.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+class BodyGrid {
+    /**
+     * Base 2 logarithm of the side (in pixels) of a cell (64x64).
+     */
+    private static final int cellShift = 6;
+
+    /**
+     * Number of columns of the grid.
+     */
+    private int columns;
+    /**
+     * Number of rows of the grid.
+     */
+    private int rows;
+    /**
+     * Bodies stored on each cell, row by row (null for cells that have never had a body).
+     */
+    private ArrayList<ArrayList<Body>> cells;
+
+    /**
+     * Basic constructor for the BodyGrid class.
+     * <p>
+     *     Bodies outside the map are stored on the cells of the map's edges.
+     * </p>
+     *
+     * @param  width Width of the map (in pixels).
+     * @param  height Height of the map (in pixels).
+     */
+    BodyGrid(int width, int height)
+    {
+        this.columns = Math.max(1, ((width - 1) >> cellShift) + 1);
+        this.rows = Math.max(1, ((height - 1) >> cellShift) + 1);
+        this.cells = new ArrayList<ArrayList<Body>>(columns * rows);
+        for(int i = 0; i < columns * rows; i++)
+        {
+            cells.add(null);
+        }
+    }
+
+    /**
+     * Adds a body to the grid.
+     *
+     * @param  b Body to add.
+     */
+    void add(Body b)
+    {
+        CollisionShape shape = b.getCollisionShape();
+        if(shape.isEmpty())
+        {
+            return;
+        }
+        int x = b.getRoundedX();
+        int y = b.getRoundedY();
+        int firstColumn = toColumn(x + shape.getLeft());
+        int lastColumn = toColumn(x + shape.getRight());
+        int firstRow = toRow(y + shape.getTop());
+        int lastRow = toRow(y + shape.getBottom());
+        for(int row = firstRow; row <= lastRow; row++)
+        {
+            for(int column = firstColumn; column <= lastColumn; column++)
+            {
+                int i = row * columns + column;
+                ArrayList<Body> cell = cells.get(i);
+                if(cell == null)
+                {
+                    cell = new ArrayList<Body>();
+                    cells.set(i, cell);
+                }
+                cell.add(b);
+            }
+        }
+    }
+
+    /**
+     * Removes a body from the grid (it must be on the same position as when it was added).
+     *
+     * @param  b Body to remove.
+     */
+    void remove(Body b)
+    {
+        CollisionShape shape = b.getCollisionShape();
+        if(shape.isEmpty())
+        {
+            return;
+        }
+        int x = b.getRoundedX();
+        int y = b.getRoundedY();
+        int firstColumn = toColumn(x + shape.getLeft());
+        int lastColumn = toColumn(x + shape.getRight());
+        int firstRow = toRow(y + shape.getTop());
+        int lastRow = toRow(y + shape.getBottom());
+        for(int row = firstRow; row <= lastRow; row++)
+        {
+            for(int column = firstColumn; column <= lastColumn; column++)
+            {
+                ArrayList<Body> cell = cells.get(row * columns + column);
+                if(cell != null)
+                {
+                    cell.remove(b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the bodies of the grid that may collide with a body, namely the ones that share a cell with it.
+     *
+     * @param  b Body used for the query (it doesn't need to be on the grid).
+     * @param  result Array where the bodies found are added (each one only once, and never b itself).
+     */
+    void query(Body b, ArrayList<Body> result)
+    {
+        CollisionShape shape = b.getCollisionShape();
+        if(shape.isEmpty())
+        {
+            return;
+        }
+        int x = b.getRoundedX();
+        int y = b.getRoundedY();
+        int firstColumn = toColumn(x + shape.getLeft());
+        int lastColumn = toColumn(x + shape.getRight());
+        int firstRow = toRow(y + shape.getTop());
+        int lastRow = toRow(y + shape.getBottom());
+        boolean manyCells = (firstColumn != lastColumn || firstRow != lastRow);
+        for(int row = firstRow; row <= lastRow; row++)
+        {
+            for(int column = firstColumn; column <= lastColumn; column++)
+            {
+                ArrayList<Body> cell = cells.get(row * columns + column);
+                if(cell == null)
+                {
+                    continue;
+                }
+                for(int i = 0; i < cell.size(); i++)
+                {
+                    Body candidate = cell.get(i);
+                    //A body that spans several cells may have been found already
+                    if(candidate != b && (!manyCells || !result.contains(candidate)))
+                    {
+                        result.add(candidate);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the column of the grid that contains an x coordinate.
+     *
+     * @param  x x coordinate on the map.
+     * @return Column of the grid (clamped to the grid's limits).
+     */
+    private int toColumn(int x)
+    {
+        return Math.min(Math.max(x >> cellShift, 0), columns - 1);
+    }
+
+    /**
+     * Returns the row of the grid that contains a y coordinate.
+     *
+     * @param  y y coordinate on the map.
+     * @return Row of the grid (clamped to the grid's limits).
+     */
+    private int toRow(int y)
+    {
+        return Math.min(Math.max(y >> cellShift, 0), rows - 1);
+    }
+}
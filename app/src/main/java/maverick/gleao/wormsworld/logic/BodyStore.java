@@ -0,0 +1,467 @@
+package maverick.gleao.wormsworld.logic;
+
+import java.util.Arrays;
+
+/**
+ * BodyStore.java - class used to store the state of a group of bodies of the same kind on parallel arrays.
+ * <p>
+ *     Each body owns a slot of the store, and the Body objects only read and write their own slot. This way, the
+ *     bodies of a kind (like the coins or the snowflakes) can be integrated and animated by loops that go through
+ *     contiguous arrays, instead of calling each body on its own. The slots of removed bodies are reused.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+class BodyStore {
+    /**
+     * Number of fractional bits of the fixed-point values (positions are kept with a precision of 1/1024 pixels).
+     */
+    private static final int fixedShift = 10;
+    /**
+     * Fixed-point value of 1.
+     */
+    private static final double fixedOne = 1 << fixedShift;
+
+    /**
+     * Indicates if the bodies are integrated with fixed-point arithmetic, so the results don't depend on the
+     * floating-point hardware (see integrateFixed).
+     */
+    private boolean fixedPoint;
+
+    /**
+     * Bodies' x positions.
+     */
+    double[] x;
+    /**
+     * Bodies' y positions.
+     */
+    double[] y;
+    /**
+     * Bodies' x velocities.
+     */
+    double[] vx;
+    /**
+     * Bodies' y velocities.
+     */
+    double[] vy;
+    /**
+     * Bodies' x accelerations.
+     */
+    double[] ax;
+    /**
+     * Bodies' y accelerations.
+     */
+    double[] ay;
+    /**
+     * Bodies' maximum x velocities.
+     */
+    double[] maxVx;
+    /**
+     * Bodies' maximum y velocities.
+     */
+    double[] maxVy;
+    /**
+     * Bodies' x accelerations due to friction.
+     */
+    double[] xAten;
+    /**
+     * Bodies' y accelerations due to gravity.
+     */
+    double[] gravity;
+    /**
+     * Bodies' former x positions.
+     */
+    double[] oldX;
+    /**
+     * Bodies' former y positions.
+     */
+    double[] oldY;
+    /**
+     * Bodies' x positions at the end of the previous physics step.
+     */
+    double[] previousX;
+    /**
+     * Bodies' y positions at the end of the previous physics step.
+     */
+    double[] previousY;
+    /**
+     * Indicates which bodies are transparent (collisions with the map are ignored for them).
+     */
+    boolean[] transparent;
+    /**
+     * Number of times each body can jump.
+     */
+    int[] nJumps;
+    /**
+     * Way each body moves.
+     */
+    Body.BodyType[] types;
+    /**
+     * Indicates which bodies are asleep (their physics aren't updated until they are woken up).
+     */
+    boolean[] sleeping;
+
+    /**
+     * Sprite sheet and frame layout of each body's animation (null if the body isn't animated).
+     */
+    Animation[] animations;
+    /**
+     * Index of the frame currently being displayed by each body.
+     */
+    int[] curFrame;
+    /**
+     * Number of milliseconds that have passed since each body's last frame swap.
+     */
+    int[] curTime;
+    /**
+     * Indicates which bodies' animations are running.
+     */
+    boolean[] animated;
+
+    /**
+     * Indicates which slots are owned by a body.
+     */
+    private boolean[] used;
+    /**
+     * Number of slots that have ever been used (the loops only go up to this slot).
+     */
+    private int size;
+    /**
+     * Slots released by their bodies, which are reused before any new slot.
+     */
+    private int[] free;
+    /**
+     * Number of released slots.
+     */
+    private int freeCount;
+
+    /**
+     * Basic constructor for the BodyStore class.
+     *
+     * @param  capacity Number of bodies the store can hold before its arrays have to grow.
+     */
+    BodyStore(int capacity)
+    {
+        resize(Math.max(1, capacity));
+        this.free = new int[0];
+    }
+
+    /**
+     * Reserves a slot for a new body.
+     *
+     * @return Index of the slot.
+     */
+    int allocate()
+    {
+        int slot;
+        if(freeCount > 0)
+        {
+            slot = free[--freeCount];
+        }
+        else
+        {
+            if(size == used.length)
+            {
+                resize(2 * size);
+            }
+            slot = size++;
+        }
+        used[slot] = true;
+        animations[slot] = null;
+        animated[slot] = true;
+        return slot;
+    }
+
+    /**
+     * Releases the slot of a body that has been removed, so it can be reused.
+     *
+     * @param  slot Index of the slot.
+     */
+    void release(int slot)
+    {
+        if(!used[slot])
+        {
+            return;
+        }
+        used[slot] = false;
+        animations[slot] = null;
+        if(freeCount == free.length)
+        {
+            free = Arrays.copyOf(free, Math.max(4, 2 * freeCount));
+        }
+        free[freeCount++] = slot;
+    }
+
+    /**
+     * Enables/Disables the fixed-point integration of the store's bodies.
+     *
+     * @param  fixedPoint Boolean that indicates if the fixed-point integration should be used.
+     */
+    void setFixedPoint(boolean fixedPoint)
+    {
+        this.fixedPoint = fixedPoint;
+    }
+
+    /**
+     * Indicates if the store's bodies are integrated with fixed-point arithmetic.
+     *
+     * @return Boolean that indicates if the fixed-point integration is used.
+     */
+    boolean isFixedPoint()
+    {
+        return fixedPoint;
+    }
+
+    /**
+     * Stores the current position of every body as its position at the end of the previous physics step.
+     */
+    void savePositions()
+    {
+        for(int i = 0; i < size; i++)
+        {
+            previousX[i] = x[i];
+            previousY[i] = y[i];
+        }
+    }
+
+    /**
+     * Updates the position of every transparent body that isn't static or asleep, for bodies that don't collide with anything.
+     * <p>
+     *     This is the same as calling Body.updatePos with no collidables on each transparent body: since nothing can
+     *     stop them, the only effect of the trajectory is that a body which moves to another pixel ends up on the
+     *     (rounded) pixel where its trajectory ends.
+     * </p>
+     *
+     * @param  deltaT Time (in millis) since the last update.
+     */
+    void integrateTransparent(long deltaT)
+    {
+        double dt = deltaT / 1000.0;
+        for(int i = 0; i < size; i++)
+        {
+            if(!used[i] || !transparent[i] || types[i] == Body.BodyType.STATIC || sleeping[i])
+            {
+                continue;
+            }
+            oldX[i] = x[i];
+            oldY[i] = y[i];
+
+            if(fixedPoint)
+            {
+                //A transparent body is never on the ground
+                integrateFixed(i, deltaT, false);
+                roundPosition(i);
+                continue;
+            }
+
+            vx[i] += dt * ax[i];
+            if(vx[i] > maxVx[i])
+            {
+                vx[i] = maxVx[i];
+            }
+            if(vx[i] < -maxVx[i])
+            {
+                vx[i] = -maxVx[i];
+            }
+            if(vx[i] > 0)
+            {
+                vx[i] = Math.max(0, vx[i] - xAten[i] * dt);
+            }
+            else if(vx[i] < 0)
+            {
+                vx[i] = Math.min(0, vx[i] + xAten[i] * dt);
+            }
+
+            //A transparent body is never on the ground
+            ay[i] = gravity[i];
+            vy[i] += dt * ay[i];
+            if(vy[i] > maxVy[i])
+            {
+                vy[i] = maxVy[i];
+            }
+            if(vy[i] < -maxVy[i])
+            {
+                vy[i] = -maxVy[i];
+            }
+
+            x[i] += dt * vx[i];
+            y[i] += dt * vy[i];
+            roundPosition(i);
+        }
+    }
+
+    /**
+     * Moves a body that has just been integrated onto the pixel where its trajectory ends, if it moved to another pixel.
+     *
+     * @param  slot Index of the body's slot.
+     */
+    private void roundPosition(int slot)
+    {
+        long roundedX = Math.round(x[slot]);
+        long roundedY = Math.round(y[slot]);
+        if(roundedX != Math.round(oldX[slot]) || roundedY != Math.round(oldY[slot]))
+        {
+            x[slot] = (int) roundedX;
+            y[slot] = (int) roundedY;
+        }
+    }
+
+    /**
+     * Updates the velocity and position of a body using fixed-point arithmetic.
+     * <p>
+     *     The body's values are converted to integers with fixedShift fractional bits, integrated with integer
+     *     operations only, and written back. Every value written back is a multiple of 1/1024, so it is stored
+     *     exactly on a double and the next conversion doesn't lose anything. This way, the same inputs give the same
+     *     results on every device.
+     * </p>
+     *
+     * @param  slot Index of the body's slot.
+     * @param  deltaT Time (in millis) since the last update.
+     * @param  onGround Boolean that indicates if the body is touching the ground (otherwise, gravity is applied).
+     */
+    void integrateFixed(int slot, long deltaT, boolean onGround)
+    {
+        long fixedVx = toFixed(vx[slot]) + deltaT * toFixed(ax[slot]) / 1000;
+        long fixedMaxVx = toFixed(maxVx[slot]);
+        fixedVx = Math.max(-fixedMaxVx, Math.min(fixedMaxVx, fixedVx));
+        long friction = toFixed(xAten[slot]) * deltaT / 1000;
+        if(fixedVx > 0)
+        {
+            fixedVx = Math.max(0, fixedVx - friction);
+        }
+        else if(fixedVx < 0)
+        {
+            fixedVx = Math.min(0, fixedVx + friction);
+        }
+
+        if(!onGround)
+        {
+            ay[slot] = gravity[slot];
+        }
+        long fixedVy = toFixed(vy[slot]) + deltaT * toFixed(ay[slot]) / 1000;
+        long fixedMaxVy = toFixed(maxVy[slot]);
+        fixedVy = Math.max(-fixedMaxVy, Math.min(fixedMaxVy, fixedVy));
+
+        vx[slot] = fromFixed(fixedVx);
+        vy[slot] = fromFixed(fixedVy);
+        x[slot] = fromFixed(toFixed(x[slot]) + deltaT * fixedVx / 1000);
+        y[slot] = fromFixed(toFixed(y[slot]) + deltaT * fixedVy / 1000);
+    }
+
+    /**
+     * Converts a value to fixed-point, rounding it to the nearest multiple of 1/1024.
+     *
+     * @param  value Value to convert.
+     * @return Fixed-point value.
+     */
+    private static long toFixed(double value)
+    {
+        return Math.round(value * fixedOne);
+    }
+
+    /**
+     * Converts a fixed-point value back to a double (exactly).
+     *
+     * @param  value Fixed-point value.
+     * @return Converted value.
+     */
+    private static double fromFixed(long value)
+    {
+        return value / fixedOne;
+    }
+
+    /**
+     * Updates the animation of every body whose animation is running.
+     *
+     * @param  deltaT Time (in millis) since the last update.
+     */
+    void updateAnimations(long deltaT)
+    {
+        for(int i = 0; i < size; i++)
+        {
+            if(used[i] && animated[i] && animations[i] != null)
+            {
+                updateAnimation(i, deltaT);
+            }
+        }
+    }
+
+    /**
+     * Updates the animation of one body.
+     *
+     * @param  slot Index of the body's slot.
+     * @param  deltaT Time (in millis) since the last update.
+     */
+    void updateAnimation(int slot, long deltaT)
+    {
+        curTime[slot] += deltaT;
+        if(curTime[slot] >= animations[slot].getFrameTime())
+        {
+            curTime[slot] = 0;
+            curFrame[slot]++;
+            if(curFrame[slot] == animations[slot].getFrameCount())
+            {
+                curFrame[slot] = 0;
+            }
+        }
+    }
+
+    /**
+     * Grows (or creates) the store's arrays.
+     *
+     * @param  capacity New number of slots.
+     */
+    private void resize(int capacity)
+    {
+        if(used == null)
+        {
+            x = new double[capacity];
+            y = new double[capacity];
+            vx = new double[capacity];
+            vy = new double[capacity];
+            ax = new double[capacity];
+            ay = new double[capacity];
+            maxVx = new double[capacity];
+            maxVy = new double[capacity];
+            xAten = new double[capacity];
+            gravity = new double[capacity];
+            oldX = new double[capacity];
+            oldY = new double[capacity];
+            previousX = new double[capacity];
+            previousY = new double[capacity];
+            transparent = new boolean[capacity];
+            nJumps = new int[capacity];
+            types = new Body.BodyType[capacity];
+            sleeping = new boolean[capacity];
+            animations = new Animation[capacity];
+            curFrame = new int[capacity];
+            curTime = new int[capacity];
+            animated = new boolean[capacity];
+            used = new boolean[capacity];
+            return;
+        }
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        vx = Arrays.copyOf(vx, capacity);
+        vy = Arrays.copyOf(vy, capacity);
+        ax = Arrays.copyOf(ax, capacity);
+        ay = Arrays.copyOf(ay, capacity);
+        maxVx = Arrays.copyOf(maxVx, capacity);
+        maxVy = Arrays.copyOf(maxVy, capacity);
+        xAten = Arrays.copyOf(xAten, capacity);
+        gravity = Arrays.copyOf(gravity, capacity);
+        oldX = Arrays.copyOf(oldX, capacity);
+        oldY = Arrays.copyOf(oldY, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        transparent = Arrays.copyOf(transparent, capacity);
+        nJumps = Arrays.copyOf(nJumps, capacity);
+        types = Arrays.copyOf(types, capacity);
+        sleeping = Arrays.copyOf(sleeping, capacity);
+        animations = Arrays.copyOf(animations, capacity);
+        curFrame = Arrays.copyOf(curFrame, capacity);
+        curTime = Arrays.copyOf(curTime, capacity);
+        animated = Arrays.copyOf(animated, capacity);
+        used = Arrays.copyOf(used, capacity);
+    }
+}
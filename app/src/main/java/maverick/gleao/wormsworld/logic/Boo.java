@@ -1,9 +1,6 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
-import android.graphics.Rect;
-
-import java.util.ArrayList;
 
 /**
  * Boo.java - class used to represent a Boo, the game's main enemy.
@@ -68,6 +65,10 @@ public class Boo extends Body {
      * Height of the first collision rectangle.
      */
     private static final int rectAHeight = 23;
+    /**
+     * Collision shape shared by all the boos.
+     */
+    private static final CollisionShape shape = new CollisionShape(rectAX, rectAY, rectAWidth, rectAHeight);
 
     /**
      * Boo's maximum x velocity.
@@ -104,23 +105,23 @@ public class Boo extends Body {
     }
 
     /**
-     * Returns an array with the body's collision rectangles.
+     * Returns the way the body moves.
      *
-     * @return Array containing the body's collision rectangles.
+     * @return The body's type (the boo flies after the hero, ignoring gravity).
      */
-    protected ArrayList<Rect> getCollisionRectangles()
+    protected BodyType getBodyType()
     {
-        ArrayList<Rect> rects = new ArrayList<Rect>();
-
-        int x = (int) Math.round(getX());
-        int y = (int) Math.round(getY());
-
-        int xA = x + rectAX;
-        int yA = y + rectAY;
-        Rect A = new Rect(xA, yA, xA + rectAWidth - 1, yA + rectAHeight - 1);
-        rects.add(A);
+        return BodyType.KINEMATIC;
+    }
 
-        return rects;
+    /**
+     * Returns the body's collision shape, relative to its position.
+     *
+     * @return The body's collision shape.
+     */
+    protected CollisionShape getCollisionShape()
+    {
+        return shape;
     }
 
     /**
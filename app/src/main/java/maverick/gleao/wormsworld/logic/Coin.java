@@ -1,9 +1,7 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
-import android.graphics.Rect;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 
 /**
@@ -83,6 +81,10 @@ public class Coin extends Body {
      * Height of the first collision rectangle.
      */
     private static final int rectAHeight = 16;
+    /**
+     * Collision shape shared by all the coins.
+     */
+    private static final CollisionShape shape = new CollisionShape(rectAX, rectAY, rectAWidth, rectAHeight);
 
     /**
      * Coin's maximum x velocity.
@@ -118,6 +120,21 @@ public class Coin extends Body {
         initAnimation();
     }
 
+    /**
+     * Constructor for a coin whose state is kept on a store shared with the other coins.
+     *
+     * @param  store Store shared by the coins.
+     * @param  x Initial x coordinate of the coin on the map.
+     * @param  y Initial y coordinate of the coin on the map.
+     * @param color The type of coin.
+     */
+    Coin(BodyStore store, double x, double y, Coin.Color color)
+    {
+        super(store,x,y,coinMaxVx,coinMaxVy,coinXAten,coinGravity,false);
+        this.color = color;
+        initAnimation();
+    }
+
     /**
      * Retrieves the coin's value.
      *
@@ -129,22 +146,23 @@ public class Coin extends Body {
     }
 
     /**
-     * Returns an array with the body's collision rectangles.
+     * Returns the way the body moves.
      *
-     * @return Array containing the body's collision rectangles.
+     * @return The body's type (coins never move after being placed).
      */
-    protected ArrayList<Rect> getCollisionRectangles()
+    protected BodyType getBodyType()
     {
-        ArrayList<Rect> rects = new ArrayList<Rect>();
-
-        int x = (int) Math.round(getX());
-        int y = (int) Math.round(getY());
-        int xA = x + rectAX;
-        int yA = y + rectAY;
-        Rect A = new Rect(xA, yA, xA + rectAWidth - 1, yA + rectAHeight - 1);
-        rects.add(A);
+        return BodyType.STATIC;
+    }
 
-        return rects;
+    /**
+     * Returns the body's collision shape, relative to its position.
+     *
+     * @return The body's collision shape.
+     */
+    protected CollisionShape getCollisionShape()
+    {
+        return shape;
     }
 
     /**
@@ -0,0 +1,471 @@
+package maverick.gleao.wormsworld.logic;
+
+import java.util.Arrays;
+
+/**
+ * CollisionShape.java - class used to represent the collision rectangles of a body, relative to the body's position.
+ * <p>
+ *     A shape is immutable, so it can be shared by all the bodies of the same class. The collision tests take the
+ *     body's (rounded) position as a parameter, so they don't need to allocate any rectangles.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+public final class CollisionShape {
+    /**
+     * Shape without any collision rectangles.
+     */
+    static final CollisionShape empty = new CollisionShape();
+
+    /**
+     * x offset of each rectangle's leftmost column (inclusive).
+     */
+    private final int[] lefts;
+    /**
+     * y offset of each rectangle's topmost row (inclusive).
+     */
+    private final int[] tops;
+    /**
+     * x offset of each rectangle's rightmost column (inclusive).
+     */
+    private final int[] rights;
+    /**
+     * y offset of each rectangle's bottommost row (inclusive).
+     */
+    private final int[] bottoms;
+    /**
+     * Bounding box of all the rectangles (left, top, right and bottom offsets, inclusive).
+     */
+    private final int[] bounds;
+
+    /**
+     * Basic constructor for the CollisionShape class.
+     *
+     * @param  rects Groups of four integers (x, y, width and height) describing each rectangle, relative to the body's position.
+     */
+    CollisionShape(int... rects)
+    {
+        int count = rects.length / 4;
+        this.lefts = new int[count];
+        this.tops = new int[count];
+        this.rights = new int[count];
+        this.bottoms = new int[count];
+        for(int i = 0; i < count; i++)
+        {
+            lefts[i] = rects[4 * i];
+            tops[i] = rects[4 * i + 1];
+            rights[i] = rects[4 * i] + rects[4 * i + 2] - 1;
+            bottoms[i] = rects[4 * i + 1] + rects[4 * i + 3] - 1;
+        }
+
+        this.bounds = new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for(int i = 0; i < count; i++)
+        {
+            bounds[0] = Math.min(bounds[0], lefts[i]);
+            bounds[1] = Math.min(bounds[1], tops[i]);
+            bounds[2] = Math.max(bounds[2], rights[i]);
+            bounds[3] = Math.max(bounds[3], bottoms[i]);
+        }
+    }
+
+    /**
+     * Returns the x offset of the leftmost column of the shape's bounding box.
+     *
+     * @return x offset of the bounding box's leftmost column (inclusive).
+     */
+    int getLeft()
+    {
+        return bounds[0];
+    }
+
+    /**
+     * Returns the y offset of the topmost row of the shape's bounding box.
+     *
+     * @return y offset of the bounding box's topmost row (inclusive).
+     */
+    int getTop()
+    {
+        return bounds[1];
+    }
+
+    /**
+     * Returns the x offset of the rightmost column of the shape's bounding box.
+     *
+     * @return x offset of the bounding box's rightmost column (inclusive).
+     */
+    int getRight()
+    {
+        return bounds[2];
+    }
+
+    /**
+     * Returns the y offset of the bottommost row of the shape's bounding box.
+     *
+     * @return y offset of the bounding box's bottommost row (inclusive).
+     */
+    int getBottom()
+    {
+        return bounds[3];
+    }
+
+    /**
+     * Returns a copy of this shape mirrored horizontally, as if its sprite was flipped.
+     *
+     * @param  spriteWidth Width of the body's sprite (in pixels).
+     * @return The mirrored shape.
+     */
+    CollisionShape mirror(int spriteWidth)
+    {
+        int[] rects = new int[4 * lefts.length];
+        for(int i = 0; i < lefts.length; i++)
+        {
+            rects[4 * i] = spriteWidth - 1 - rights[i];
+            rects[4 * i + 1] = tops[i];
+            rects[4 * i + 2] = rights[i] - lefts[i] + 1;
+            rects[4 * i + 3] = bottoms[i] - tops[i] + 1;
+        }
+        return new CollisionShape(rects);
+    }
+
+    /**
+     * Indicates if the shape has no collision rectangles.
+     *
+     * @return Boolean that indicates if the shape is empty.
+     */
+    boolean isEmpty()
+    {
+        return lefts.length == 0;
+    }
+
+    /**
+     * Returns the shape's rectangles, in the format received by the constructor.
+     *
+     * @return Groups of four integers (x, y, width and height) describing each rectangle, relative to the body's position.
+     */
+    int[] getRects()
+    {
+        int[] rects = new int[4 * lefts.length];
+        for(int i = 0; i < lefts.length; i++)
+        {
+            rects[4 * i] = lefts[i];
+            rects[4 * i + 1] = tops[i];
+            rects[4 * i + 2] = rights[i] - lefts[i] + 1;
+            rects[4 * i + 3] = bottoms[i] - tops[i] + 1;
+        }
+        return rects;
+    }
+
+    /**
+     * Indicates if the shape, placed at a given position, collides with the map.
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @return Boolean that indicates if the shape collides with the map.
+     */
+    boolean collidesWith(Map m, int x, int y)
+    {
+        for(int i = 0; i < lefts.length; i++)
+        {
+            if(m.collidesWith(x + lefts[i], y + tops[i], x + rights[i], y + bottoms[i]))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates if the shape, placed at a given position, intersects another shape placed at another position.
+     * <p>
+     *     Like Rect.intersects, rectangles that only share their limits are not considered to intersect.
+     * </p>
+     *
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @param  other The other shape.
+     * @param  otherX x coordinate of the other body.
+     * @param  otherY y coordinate of the other body.
+     * @return Boolean that indicates if the shapes intersect.
+     */
+    boolean intersects(int x, int y, CollisionShape other, int otherX, int otherY)
+    {
+        for(int i = 0; i < lefts.length; i++)
+        {
+            int left = x + lefts[i];
+            int top = y + tops[i];
+            int right = x + rights[i];
+            int bottom = y + bottoms[i];
+            for(int j = 0; j < other.lefts.length; j++)
+            {
+                if(left < otherX + other.rights[j] && otherX + other.lefts[j] < right
+                        && top < otherY + other.bottoms[j] && otherY + other.tops[j] < bottom)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns how many steps (of one pixel along each axis) the shape can take from a given position without colliding with the map.
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @return Number of steps the shape can take without colliding with the map (negative if it may already be colliding).
+     */
+    int getClearance(Map m, int x, int y)
+    {
+        int clearance = Integer.MAX_VALUE;
+        for(int i = 0; i < lefts.length; i++)
+        {
+            clearance = Math.min(clearance, m.getClearance(x + lefts[i], y + tops[i], x + rights[i], y + bottoms[i]));
+        }
+        return clearance;
+    }
+
+    /**
+     * Indicates if the shape, placed at a given position, would collide with the map if it was moved one pixel down.
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @return Boolean that indicates if the shape is resting on (or colliding with) the map.
+     */
+    boolean isOnGround(Map m, int x, int y)
+    {
+        return collidesWith(m, x, y + 1);
+    }
+
+    /**
+     * Returns how many pixels the shape can fall, from a given position, without colliding with the map.
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @return Number of pixels the shape can fall (negative if it is already colliding with the map).
+     */
+    int getDropDistance(Map m, int x, int y)
+    {
+        int drop = Integer.MAX_VALUE;
+        for(int i = 0; i < lefts.length; i++)
+        {
+            int rectDrop = m.getDropDistance(x + lefts[i], y + tops[i], x + rights[i], y + bottoms[i]);
+            if(rectDrop < 0)
+            {
+                return -1;
+            }
+            drop = Math.min(drop, rectDrop);
+        }
+        return drop;
+    }
+
+    /**
+     * Finds the first row, at or below a given one, where the shape can be placed without colliding with the map.
+     * <p>
+     *     Whenever one of the rectangles overlaps a vertical span of tangible pixels, the shape jumps to the first row
+     *     where the rectangle is below that span, so solid areas are skipped without testing each of their rows.
+     * </p>
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate where the search starts.
+     * @return First free y coordinate found (it may be beyond the map's bottom).
+     */
+    int findFreeRow(Map m, int x, int y)
+    {
+        boolean moved = true;
+        while(moved && y < m.getMapHeight())
+        {
+            moved = false;
+            for(int i = 0; i < lefts.length; i++)
+            {
+                for(int column = x + lefts[i]; column <= x + rights[i]; column++)
+                {
+                    int ground = m.findGround(column, y + tops[i]);
+                    if(ground != -1 && ground <= y + bottoms[i])
+                    {
+                        y = m.findGap(column, ground) - tops[i];
+                        moved = true;
+                    }
+                }
+            }
+        }
+        return y;
+    }
+
+    /**
+     * Returns how far the shape can move from a given position, along one of the axes, without colliding with the map.
+     * <p>
+     *     The area swept by each rectangle is itself a rectangle, so a movement is free if that area doesn't collide
+     *     with the map. The free distance is found by bisection (or read from the map's ground index, when falling),
+     *     so the cost doesn't depend on the distance travelled.
+     * </p>
+     * <p>
+     *     Rectangles that already collide with the map at the starting position don't limit the movement, so a shape
+     *     that starts inside the map can still move out of it.
+     * </p>
+     *
+     * @param  m The game's map.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @param  dx Movement along the x axis (it must be 0 if dy isn't).
+     * @param  dy Movement along the y axis (it must be 0 if dx isn't).
+     * @return Number of pixels the shape can move along the given direction, from 0 up to the movement's length.
+     */
+    int sweep(Map m, int x, int y, int dx, int dy)
+    {
+        int stepX = Integer.signum(dx);
+        int stepY = Integer.signum(dy);
+        int allowed = Math.abs(dx + dy);
+        if(stepY > 0)
+        {
+            int drop = getDropDistance(m, x, y);
+            if(drop >= 0)
+            {
+                return Math.min(allowed, drop);
+            }
+        }
+        for(int i = 0; i < lefts.length && allowed > 0; i++)
+        {
+            if(isSweepFree(m, i, x, y, stepX * allowed, stepY * allowed))
+            {
+                continue;
+            }
+            if(!isSweepFree(m, i, x, y, 0, 0))
+            {
+                //The rectangle already collides with the map
+                continue;
+            }
+            //Bisection: the movement is free up to low and collides at high
+            int low = 0;
+            int high = allowed;
+            while(high - low > 1)
+            {
+                int middle = (low + high) >>> 1;
+                if(isSweepFree(m, i, x, y, stepX * middle, stepY * middle))
+                {
+                    low = middle;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+            allowed = low;
+        }
+        return allowed;
+    }
+
+    /**
+     * Indicates if one of the shape's rectangles can move from a given position, in a straight line, without colliding with the map.
+     *
+     * @param  m The game's map.
+     * @param  i Index of the rectangle.
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @param  dx Movement along the x axis.
+     * @param  dy Movement along the y axis.
+     * @return Boolean that indicates if the area swept by the rectangle is free.
+     */
+    private boolean isSweepFree(Map m, int i, int x, int y, int dx, int dy)
+    {
+        return !m.collidesWith(x + lefts[i] + Math.min(dx, 0), y + tops[i] + Math.min(dy, 0),
+                x + rights[i] + Math.max(dx, 0), y + bottoms[i] + Math.max(dy, 0));
+    }
+
+    /**
+     * Returns how far the shape can move from a given position, along one of the axes, without intersecting another shape.
+     * <p>
+     *     The time of impact of each pair of rectangles is computed analytically, using the same (strict) test as intersects.
+     *     Pairs of rectangles that already intersect at the starting position don't limit the movement.
+     * </p>
+     *
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     * @param  dx Movement along the x axis (it must be 0 if dy isn't).
+     * @param  dy Movement along the y axis (it must be 0 if dx isn't).
+     * @param  other The other shape.
+     * @param  otherX x coordinate of the other body.
+     * @param  otherY y coordinate of the other body.
+     * @return Number of pixels the shape can move along the given direction, from 0 up to the movement's length.
+     */
+    int sweep(int x, int y, int dx, int dy, CollisionShape other, int otherX, int otherY)
+    {
+        boolean alongX = (dx != 0);
+        int direction = Integer.signum(dx + dy);
+        int allowed = Math.abs(dx + dy);
+        for(int i = 0; i < lefts.length && allowed > 0; i++)
+        {
+            //Limits of this rectangle along the movement's axis (start, end) and across it (low, high)
+            int start = (alongX ? x + lefts[i] : y + tops[i]);
+            int end = (alongX ? x + rights[i] : y + bottoms[i]);
+            int low = (alongX ? y + tops[i] : x + lefts[i]);
+            int high = (alongX ? y + bottoms[i] : x + rights[i]);
+            for(int j = 0; j < other.lefts.length; j++)
+            {
+                int otherStart = (alongX ? otherX + other.lefts[j] : otherY + other.tops[j]);
+                int otherEnd = (alongX ? otherX + other.rights[j] : otherY + other.bottoms[j]);
+                int otherLow = (alongX ? otherY + other.tops[j] : otherX + other.lefts[j]);
+                int otherHigh = (alongX ? otherY + other.bottoms[j] : otherX + other.rights[j]);
+                if(!(low < otherHigh && otherLow < high))
+                {
+                    //The rectangles never meet while moving along this axis
+                    continue;
+                }
+                //First step where the rectangles intersect, and the step where they stop intersecting
+                int hit = (direction > 0 ? otherStart - end : start - otherEnd) + 1;
+                int leave = (direction > 0 ? otherEnd - start : end - otherStart);
+                if(hit <= 0)
+                {
+                    //The rectangles already intersect (or are behind each other)
+                    continue;
+                }
+                if(hit < leave && hit <= allowed)
+                {
+                    allowed = hit - 1;
+                }
+            }
+        }
+        return allowed;
+    }
+
+    /**
+     * Indicates if another object is a shape with the same rectangles, in the same order (so the shapes of bodies
+     * created at different times, or read from a MapCache file, share the same SpawnIndex).
+     *
+     * @param  o The object to compare with.
+     * @return Boolean that indicates if the shapes are equal.
+     */
+    @Override
+    public boolean equals(Object o)
+    {
+        if(this == o)
+        {
+            return true;
+        }
+        if(!(o instanceof CollisionShape))
+        {
+            return false;
+        }
+        CollisionShape other = (CollisionShape) o;
+        return Arrays.equals(lefts, other.lefts) && Arrays.equals(tops, other.tops)
+                && Arrays.equals(rights, other.rights) && Arrays.equals(bottoms, other.bottoms);
+    }
+
+    /**
+     * Returns a hash code computed from the shape's rectangles, consistent with equals.
+     *
+     * @return The shape's hash code.
+     */
+    @Override
+    public int hashCode()
+    {
+        int hash = Arrays.hashCode(lefts);
+        hash = 31 * hash + Arrays.hashCode(tops);
+        hash = 31 * hash + Arrays.hashCode(rights);
+        return 31 * hash + Arrays.hashCode(bottoms);
+    }
+}
@@ -1,9 +1,6 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
-import android.graphics.Rect;
-
-import java.util.ArrayList;
 
 /**
  * Flag.java - class used to represent a flag, the game's goal.
@@ -28,19 +25,23 @@ public class Flag extends Body {
     /**
      * x coordinate of the first collision rectangle upper left corner pixel.
      */
-    final int rectAX = 29;
+    private static final int rectAX = 29;
     /**
      * y coordinate of the first collision rectangle upper left corner pixel.
      */
-    final int rectAY = 0;
+    private static final int rectAY = 0;
     /**
      * Width of the first collision rectangle.
      */
-    final int rectAWidth = 11;
+    private static final int rectAWidth = 11;
     /**
      * Height of the first collision rectangle.
      */
-    final int rectAHeight = 50;
+    private static final int rectAHeight = 50;
+    /**
+     * Collision shape shared by all the flags.
+     */
+    private static final CollisionShape shape = new CollisionShape(rectAX, rectAY, rectAWidth, rectAHeight);
 
     /**
      * Flag's maximum x velocity.
@@ -75,23 +76,23 @@ public class Flag extends Body {
     }
 
     /**
-     * Returns an array with the body's collision rectangles.
+     * Returns the way the body moves.
      *
-     * @return Array containing the body's collision rectangles.
+     * @return The body's type (the flag never moves after being placed).
      */
-    protected ArrayList<Rect> getCollisionRectangles()
+    protected BodyType getBodyType()
     {
-        ArrayList<Rect> rects = new ArrayList<Rect>();
-
-        int x = (int) Math.round(getX());
-        int y = (int) Math.round(getY());
-
-        int xA = x + rectAX;
-        int yA = y + rectAY;
-        Rect A = new Rect(xA, yA, xA + rectAWidth - 1, yA + rectAHeight - 1);
-        rects.add(A);
+        return BodyType.STATIC;
+    }
 
-        return rects;
+    /**
+     * Returns the body's collision shape, relative to its position.
+     *
+     * @return The body's collision shape.
+     */
+    protected CollisionShape getCollisionShape()
+    {
+        return shape;
     }
 
     /**
@@ -1,9 +1,7 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
-import android.graphics.Rect;
 
-import java.util.ArrayList;
 import java.util.Random;
 
 /**
@@ -72,15 +70,17 @@ public class Flake extends Body {
 
 
     /**
-     * Basic constructor for the Flake class.
+     * Constructor for a flake whose state is kept on a store shared with the other flakes.
      *
+     * @param  store Store shared by the flakes.
      * @param  x Initial x coordinate of the flake on the map.
      * @param  y Initial y coordinate of the flake on the map.
      * @param  size Size of the snowflake.
+     * @param  rand Random number generator used to choose the flake's gravity.
      */
-    public Flake(double x, double y, Size size)
+    Flake(BodyStore store, double x, double y, Size size, Random rand)
     {
-        super(x,y,flakeMaxVx,flakeMaxVy,flakeXAten,generateRandomGravity(),true);
+        super(store,x,y,flakeMaxVx,flakeMaxVy,flakeXAten,generateRandomGravity(rand),true);
         this.size = size;
         initAnimation();
     }
@@ -88,21 +88,22 @@ public class Flake extends Body {
     /**
      * Generate a random gravity for a flake.
      *
+     * @param  rand Random number generator.
      * @return Random gravity for a flake
      */
-    private static int generateRandomGravity()
+    private static int generateRandomGravity(Random rand)
     {
-        return 3*((new Random()).nextInt(10) + 1);
+        return 3*(rand.nextInt(10) + 1);
     }
 
     /**
-     * Returns an array with the body's collision rectangles.
+     * Returns the body's collision shape, relative to its position.
      *
-     * @return Array containing the body's collision rectangles.
+     * @return The body's collision shape (flakes don't collide with anything).
      */
-    protected ArrayList<Rect> getCollisionRectangles()
+    protected CollisionShape getCollisionShape()
     {
-        return new ArrayList<Rect>();
+        return CollisionShape.empty;
     }
 
     /**
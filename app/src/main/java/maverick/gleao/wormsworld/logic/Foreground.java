@@ -2,7 +2,7 @@ package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
 
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Random;
 
@@ -24,6 +24,10 @@ class Foreground implements Drawable {
      * Structure that contains the snowflakes currently being shown on the foreground.
      */
     private LinkedList<Flake> flakes;
+    /**
+     * Store that holds the state of the snowflakes.
+     */
+    private BodyStore flakeStore;
     /**
      * Number of seconds between the spawning of two consecutive snowflakes.
      */
@@ -32,6 +36,10 @@ class Foreground implements Drawable {
      * Number of milliseconds that have passed since the spawning of the last snowflake.
      */
     private int curTime;
+    /**
+     * Random number generator used to spawn the snowflakes.
+     */
+    private Random rand;
 
     /**
      * Initial value for a flake's y coordinate when it is created.
@@ -42,12 +50,15 @@ class Foreground implements Drawable {
      * Basic constructor for the Foreground class.
      *
      * @param  map The game's map.
+     * @param  rand Random number generator (shared with the game, so a seeded game spawns the same snowflakes).
      */
-    Foreground(Map map)
+    Foreground(Map map, Random rand)
     {
         this.map = map;
+        this.rand = rand;
         this.activeFlakes = false;
         this.flakes = new LinkedList<>();
+        this.flakeStore = new BodyStore(64);
         this.curTime = 0;
     }
 
@@ -61,6 +72,16 @@ class Foreground implements Drawable {
         this.activeFlakes = activeFlakes;
     }
 
+    /**
+     * Enables/Disables the deterministic fixed-point physics for the snowflakes.
+     *
+     * @param  fixedPoint Boolean that indicates if the fixed-point physics should be used.
+     */
+    void setFixedPoint(boolean fixedPoint)
+    {
+        flakeStore.setFixedPoint(fixedPoint);
+    }
+
     /**
      * Draws the foreground on top of the given bitmap.
      *
@@ -68,12 +89,39 @@ class Foreground implements Drawable {
      */
     public void draw(Bitmap gameMap)
     {
-        synchronized (flakes) {
-            for(Flake snowflake: flakes)
-            {
-                snowflake.draw(gameMap);
-            }
+        for(Flake snowflake: flakes)
+        {
+            snowflake.draw(gameMap);
+        }
+    }
+
+    /**
+     * Adds the snowflakes' sprites to a render snapshot, interpolating their positions between the last two physics steps.
+     *
+     * @param  snapshot Snapshot where the sprites are added.
+     * @param  alpha Fraction of the way from the previous to the current positions.
+     */
+    void addSprites(RenderSnapshot snapshot, double alpha)
+    {
+        for(Flake snowflake: flakes)
+        {
+            snowflake.addSprite(snapshot, alpha);
+        }
+    }
+
+    /**
+     * Combines the positions of the snowflakes with a hash.
+     *
+     * @param  hash Hash to combine the positions with.
+     * @return The new hash.
+     */
+    long hashPositions(long hash)
+    {
+        for(Flake snowflake: flakes)
+        {
+            hash = snowflake.hashPosition(hash);
         }
+        return hash;
     }
 
     /**
@@ -92,30 +140,21 @@ class Foreground implements Drawable {
             //Create more snowflakes
             while (curTime >= flakeSpawnTime) {
                 curTime -= flakeSpawnTime;
-                Flake snowflake;
-                Random rand = new Random();
-                if (rand.nextInt(20) == 0) {
-                    snowflake = new Flake(rand.nextInt(map.getMapWidth()), flakeYI, Flake.Size.LARGE);
-                } else {
-                    snowflake = new Flake(rand.nextInt(map.getMapWidth()), flakeYI, Flake.Size.SMALL);
-                }
-                synchronized (flakes) {
-                    flakes.add(snowflake);
-                }
+                Flake.Size size = (rand.nextInt(20) == 0 ? Flake.Size.LARGE : Flake.Size.SMALL);
+                flakes.add(new Flake(flakeStore, rand.nextInt(map.getMapWidth()), flakeYI, size, rand));
             }
         }
 
-        //Update all snowflakes' positions
-        synchronized (flakes) {
-            for (int i = 0; i < flakes.size(); i++) {
-                Flake snowflake = flakes.get(i);
-                ArrayList<Body> collidables = new ArrayList<Body>();
-                snowflake.updatePos(deltaT, map, collidables);
-                snowflake.updateAnim(deltaT);
-                if (snowflake.getY() >= map.getMapHeight()) {
-                    flakes.remove(snowflake);
-                    i--;
-                }
+        //Update all snowflakes' positions (snowflakes don't collide with anything)
+        flakeStore.savePositions();
+        flakeStore.integrateTransparent(deltaT);
+        flakeStore.updateAnimations(deltaT);
+        Iterator<Flake> it = flakes.iterator();
+        while (it.hasNext()) {
+            Flake snowflake = it.next();
+            if (snowflake.getY() >= map.getMapHeight()) {
+                it.remove();
+                snowflake.release();
             }
         }
     }
@@ -1,19 +1,18 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Observable;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Game.java - class used to represent a game.
  * @author  Gonçalo Leão
  * @author  José Gomes
  */
-public class Game extends Observable {
+public class Game {
     /**
      * The game's map.
      */
@@ -33,11 +32,32 @@ public class Game extends Observable {
     /**
      * Array containing all the game's coins.
      */
-    private LinkedList<Coin> coins;
+    private ArrayList<Coin> coins;
     /**
      * Array containing all the game's stars.
      */
     private ArrayList<Star> stars;
+    /**
+     * Store that holds the state of all the game's coins.
+     */
+    private BodyStore coinStore;
+    /**
+     * Store that holds the state of all the game's stars.
+     */
+    private BodyStore starStore;
+    /**
+     * Grid containing the bodies that never move (the destination, the coins and the stars), used to find the ones the hero may be touching.
+     */
+    private BodyGrid staticBodies;
+    /**
+     * Array used to store the static bodies near the hero, on each update.
+     */
+    private ArrayList<Body> nearbyBodies = new ArrayList<Body>();
+    /**
+     * Ranges of tiles (first column, first row, last column and last row) around the hero and around the camera when
+     * the map's tiles were last prefetched.
+     */
+    private final int[] prefetchedTiles = {-1, -1, -1, -1, -1, -1, -1, -1};
     /**
      * Current score of the game (in terms of the total coin value).
      */
@@ -115,7 +135,21 @@ public class Game extends Observable {
     private Game.Level level;
 
     /**
-     * Represents a game event (for observer notification).
+     * Represents the way the movement of the game's bodies is stopped by collisions.
+     */
+    public enum CollisionMode{
+        /**
+         * The bodies move pixel by pixel along their trajectory and, on the first collision, go back to the last free pixel and stop.
+         */
+        STEPPED,
+        /**
+         * The bodies move along each axis separately, as far as they can, so they slide along walls instead of stopping.
+         */
+        SWEPT
+    };
+
+    /**
+     * Represents a game event (raised on the game's event queue).
      */
     public enum GameEvent{
         /**
@@ -177,6 +211,64 @@ public class Game extends Observable {
      */
     private static final int largeCoinRange = 30;
 
+    /**
+     * Maximum initial width of the camera, for levels whose graphics are split into tiles.
+     */
+    private static final int maxTiledCamWidth = 1280;
+
+    /**
+     * Duration (in millis) of each physics step (the bodies' speeds and accelerations were tuned for this step).
+     */
+    public static final long physicsStep = 100;
+    /**
+     * Maximum number of physics steps done on a single call to advance (the remaining time is dropped, so a slow
+     * device doesn't fall further and further behind).
+     */
+    private static final int maxStepsPerAdvance = 5;
+    /**
+     * Number of millis that have passed but haven't been simulated yet (always less than a physics step, after advance).
+     */
+    private long accumulator;
+    /**
+     * Fraction of a physics step that has passed since the last one (used to interpolate the bodies' positions when drawing).
+     */
+    private double interpolation;
+    /**
+     * Boolean that indicates if the game has ended (with a victory or a loss).
+     */
+    private boolean over;
+    /**
+     * Random number generator used for every random decision of the game (placing the bodies, spawning snowflakes).
+     */
+    private Random rand;
+
+    /**
+     * Queue of the events raised by the updates, drained by the thread that shows them.
+     */
+    private final GameEventQueue events = new GameEventQueue();
+
+    /**
+     * Flag set on the shared snapshot's index when it holds a snapshot that hasn't been picked up for drawing yet.
+     */
+    private static final int freshSnapshot = 4;
+    /**
+     * Snapshots of the game's graphics (one being filled by the update, one being drawn and one waiting between them).
+     */
+    private RenderSnapshot[] snapshots;
+    /**
+     * Index of the snapshot waiting between the update and the drawing (ORed with freshSnapshot when it is newer than
+     * the one being drawn).
+     */
+    private AtomicInteger sharedSnapshot;
+    /**
+     * Index of the snapshot being filled (only used by the thread that updates the game).
+     */
+    private int backSnapshot;
+    /**
+     * Index of the snapshot being drawn (only used by the thread that draws the game).
+     */
+    private int frontSnapshot;
+
     /**
      * Basic constructor for the Game class.
      *
@@ -187,25 +279,110 @@ public class Game extends Observable {
      */
     public Game(Bitmap map, Bitmap mapKey, Bitmap background, Game.Level level)
     {
-        this.map = new Map(map,mapKey,background);
+        this(new MapImage(map), new MapImage(mapKey), (background == null ? null : new MapImage(background)), level, null);
+    }
+
+    /**
+     * Constructor for the Game class that receives the map's images (which may be split into tiles) and loads the map's
+     * collision data from a cache file, when possible.
+     * <p>
+     *     If the cache was opened, the key image isn't used (it may be null). Otherwise, the key image is decoded and its
+     *     collision data is saved onto the cache, for the next games (it is saved again when bodies whose standing
+     *     positions aren't on the cache are placed).
+     * </p>
+     *
+     * @param map Image containing the map's graphics.
+     * @param mapKey Image containing the block type of each pixel (the image uses color coding).
+     * @param background Image containing the map's background graphics.
+     * @param level Level currently being played.
+     * @param mapCache Cache of the map's collision data (null to always decode the key image).
+     */
+    public Game(MapImage map, MapImage mapKey, MapImage background, Game.Level level, MapCache mapCache)
+    {
+        this(map, mapKey, background, level, mapCache, new Random(), false);
+    }
+
+    /**
+     * Constructor for a deterministic game, whose random decisions come from a seeded random number generator and whose
+     * bodies use fixed-point physics.
+     * <p>
+     *     Two games created with the same map, level and seed, which receive the same inputs before the same physics
+     *     steps, evolve exactly in the same way on any device. This way, a game can be replayed from its seed and inputs.
+     * </p>
+     *
+     * @param map Image containing the map's graphics.
+     * @param mapKey Image containing the block type of each pixel (the image uses color coding).
+     * @param background Image containing the map's background graphics.
+     * @param level Level currently being played.
+     * @param mapCache Cache of the map's collision data (null to always decode the key image).
+     * @param seed Seed of the game's random number generator.
+     */
+    public Game(MapImage map, MapImage mapKey, MapImage background, Game.Level level, MapCache mapCache, long seed)
+    {
+        this(map, mapKey, background, level, mapCache, new Random(seed), true);
+    }
+
+    /**
+     * Constructor used by the public ones.
+     *
+     * @param map Image containing the map's graphics.
+     * @param mapKey Image containing the block type of each pixel (the image uses color coding).
+     * @param background Image containing the map's background graphics.
+     * @param level Level currently being played.
+     * @param mapCache Cache of the map's collision data (null to always decode the key image).
+     * @param rand Random number generator used for every random decision of the game.
+     * @param deterministic Boolean that indicates if the bodies should use fixed-point physics.
+     */
+    private Game(MapImage map, MapImage mapKey, MapImage background, Game.Level level, MapCache mapCache, Random rand, boolean deterministic)
+    {
+        this.rand = rand;
+        if(mapCache != null && mapCache.isOpen())
+        {
+            this.map = mapCache.load(map,background);
+        }
+        else
+        {
+            this.map = new Map(map,mapKey,background);
+        }
+        int mapWidth = this.map.getMapWidth();
+        int mapHeight = this.map.getMapHeight();
+        int camWidth = (int) Math.round(mapWidth / 2);
+        int camHeight = (int) Math.round(mapHeight / 2);
+        if(this.map.isTiled() && camWidth > maxTiledCamWidth)
+        {
+            //Large levels start with a camera of a reasonable size
+            camHeight = (int) ((long) camHeight * maxTiledCamWidth / camWidth);
+            camWidth = maxTiledCamWidth;
+        }
         synchronized (lock1)
         {
-            Camera.getInstance().setMaxX(map.getWidth() - 1);
-            Camera.getInstance().setMaxY(map.getHeight() - 1);
-            Camera.getInstance().setWidth((int) Math.round(map.getWidth() / 2));
-            Camera.getInstance().setHeight((int) Math.round(map.getHeight() / 2));
+            Camera.getInstance().setMaxX(mapWidth - 1);
+            Camera.getInstance().setMaxY(mapHeight - 1);
+            Camera.getInstance().setWidth(camWidth);
+            Camera.getInstance().setHeight(camHeight);
         }
         this.level = level;
         hero = new Worm(deadCoordinate,deadCoordinate);
         destination = new Flag(deadCoordinate,deadCoordinate);
         boo = new Boo(deadCoordinate,deadCoordinate);
-        coins = new LinkedList<Coin>();
-        stars = this.map.getStars();
+        coins = new ArrayList<Coin>();
+        coinStore = new BodyStore(getMinCoins(level) + getCoinRange(level));
+        starStore = new BodyStore(16);
+        stars = this.map.getStars(starStore);
         this.score = 0;
-        this.foreground = new Foreground(this.map);
+        this.foreground = new Foreground(this.map, rand);
         if(levelUsesFlakes(level)) {
             this.foreground.setActiveFlakes(true);
         }
+        if(deterministic)
+        {
+            hero.setFixedPoint(true);
+            destination.setFixedPoint(true);
+            boo.setFixedPoint(true);
+            coinStore.setFixedPoint(true);
+            starStore.setFixedPoint(true);
+            foreground.setFixedPoint(true);
+        }
 
         this.pressingLeft = false;
         this.pressingRight = false;
@@ -214,27 +391,50 @@ public class Game extends Observable {
 
         this.timeRemaining = getLevelMaxTime(level);
 
-        placeBodies();
-        placeCoins();
+        SpawnSession session = new SpawnSession(this.map);
+        placeBodies(session);
+        placeCoins(session);
+        if(mapCache != null && (!mapCache.isOpen() || this.map.hasNewSpawnIndexes()))
+        {
+            //The cache is saved once the bodies are placed, so it holds their standing positions
+            mapCache.save(this.map);
+        }
+
+        this.staticBodies = new BodyGrid(mapWidth, mapHeight);
+        staticBodies.add(destination);
+        for(Coin coin : coins)
+        {
+            staticBodies.add(coin);
+        }
+        for(int i = 0; i < stars.size(); i++)
+        {
+            staticBodies.add(stars.get(i));
+        }
+
+        this.snapshots = new RenderSnapshot[] {new RenderSnapshot(), new RenderSnapshot(), new RenderSnapshot()};
+        this.frontSnapshot = 0;
+        this.sharedSnapshot = new AtomicInteger(1);
+        this.backSnapshot = 2;
+        publishSnapshot();
     }
 
     /**
      * Retrieves a bitmap with all of the game's graphics, background excluded.
+     * <p>
+     *     The bitmap shows a snapshot published by the update, so it never waits for the update to finish.
+     * </p>
      *
+     * @param  snapshot Snapshot of the frame being drawn (see acquireFrame).
      * @return Bitmap with all of the game's graphics, background excluded.
      */
-    public Bitmap getGameMap()
+    public Bitmap getGameMap(RenderSnapshot snapshot)
     {
-        Bitmap gameMap = map.getGameMap();
+        Bitmap gameMap = null;
         if(map != null)
         {
-            synchronized (lock1) {
-                Camera cam = Camera.getInstance();
-                gameMap = Bitmap.createBitmap(gameMap, cam.getX(), cam.getY(), Math.min(cam.getWidth(), gameMap.getWidth()), Math.min(cam.getHeight(), gameMap.getHeight()));
-                gameMap = gameMap.copy(gameMap.getConfig(), true);
-                drawBodies(gameMap);
-                foreground.draw(gameMap);
-            }
+            gameMap = map.getGameMap(snapshot.getCameraX(), snapshot.getCameraY(),
+                    Math.min(snapshot.getCameraWidth(), map.getMapWidth()), Math.min(snapshot.getCameraHeight(), map.getMapHeight()));
+            snapshot.draw(gameMap);
         }
         return gameMap;
     }
@@ -242,17 +442,60 @@ public class Game extends Observable {
     /**
      * Retrieves a bitmap of the game's background.
      *
+     * @param  snapshot Snapshot of the frame being drawn (see acquireFrame).
      * @return Bitmap of the game's background.
      */
-    public Bitmap getBackground() {
-        Bitmap background = map.getBackground();
-        if (background != null) {
-            synchronized (lock1) {
-                Camera cam = Camera.getInstance();
-                background = Bitmap.createBitmap(background, cam.getX(), cam.getY(), Math.min(cam.getWidth(), background.getWidth()), Math.min(cam.getHeight(), background.getHeight()));
-            }
+    public Bitmap getBackground(RenderSnapshot snapshot) {
+        return map.getBackground(snapshot.getCameraX(), snapshot.getCameraY(),
+                Math.min(snapshot.getCameraWidth(), map.getMapWidth()), Math.min(snapshot.getCameraHeight(), map.getMapHeight()));
+    }
+
+    /**
+     * Fills a snapshot with the camera's rectangle and the sprites of all of the game's bodies (interpolated between
+     * the last two physics steps) and hands it over to the drawing.
+     * <p>
+     *     It must only be called by the thread that updates the game. The snapshot being drawn is never touched, so
+     *     neither thread waits for the other.
+     * </p>
+     */
+    private void publishSnapshot()
+    {
+        RenderSnapshot snapshot = snapshots[backSnapshot];
+        synchronized (lock1)
+        {
+            snapshot.reset(Camera.getInstance());
         }
-        return background;
+        hero.addSprite(snapshot, interpolation);
+        //Static bodies are drawn on their current position
+        destination.addSprite(snapshot, 1.0);
+        boo.addSprite(snapshot, interpolation);
+        for (Coin coin : coins) {
+            coin.addSprite(snapshot, 1.0);
+        }
+        for (int i = 0; i < stars.size(); i++) {
+            stars.get(i).addSprite(snapshot, 1.0);
+        }
+        foreground.addSprites(snapshot, interpolation);
+        backSnapshot = sharedSnapshot.getAndSet(backSnapshot | freshSnapshot) & ~freshSnapshot;
+    }
+
+    /**
+     * Returns the latest snapshot published by the update, to draw a frame.
+     * <p>
+     *     It must only be called by the thread that draws the game, once per frame, and the same snapshot must be used
+     *     for every layer of the frame (so the background and the map are drawn with the same camera). The snapshot
+     *     stays untouched by the update until the next call.
+     * </p>
+     *
+     * @return Snapshot to draw.
+     */
+    public RenderSnapshot acquireFrame()
+    {
+        if((sharedSnapshot.get() & freshSnapshot) != 0)
+        {
+            frontSnapshot = sharedSnapshot.getAndSet(frontSnapshot) & ~freshSnapshot;
+        }
+        return snapshots[frontSnapshot];
     }
 
     /**
@@ -272,84 +515,112 @@ public class Game extends Observable {
 
     /**
      * Randomly places all of the game's bodies.
+     *
+     * @param session The session where the game's bodies are placed.
      */
-    private void placeBodies()
+    private void placeBodies(SpawnSession session)
     {
-        ArrayList<Body> collidables = new ArrayList<Body>();
         //Place the hero worm
-        hero.placeBody(map, collidables);
-        collidables.add(hero);
+        hero.placeBody(session, rand);
         //Place the destination flag
-        destination.placeBody(map, collidables);
-        collidables.add(destination);
+        destination.placeBody(session, rand);
 
         //Place the boo
-        boo.placeBody(map, collidables);
+        boo.placeBody(session, rand);
     }
 
     /**
      * Randomly places all of the game's coin.
+     *
+     * @param session The session where the game's bodies are placed (after the other bodies).
      */
-    private void placeCoins()
+    private void placeCoins(SpawnSession session)
     {
-        Random rand = new Random();
         int n_coins = (rand.nextInt(getCoinRange(level)) + getMinCoins(level));
 
         //Place the yellow coins
-        ArrayList<Body> collidables = new ArrayList<Body>();
-        collidables.add(hero);
-        collidables.add(destination);
-        collidables.add(boo);
         for(int i = 0; i < n_coins; i++)
         {
             Coin coin;
             if(rand.nextInt(50) <= 10)
             {
-                coin = new Coin(deadCoordinate,deadCoordinate, Coin.Color.RED);
+                coin = new Coin(coinStore,deadCoordinate,deadCoordinate, Coin.Color.RED);
             }
             else
             {
-                coin = new Coin(deadCoordinate,deadCoordinate, Coin.Color.YELLOW);
+                coin = new Coin(coinStore,deadCoordinate,deadCoordinate, Coin.Color.YELLOW);
             }
-            coin.placeBody(map, collidables);
-            collidables.add(coin);
+            coin.placeBody(session, rand);
             coins.add(coin);
         }
     }
 
     /**
-     * Draws all of the game's bodies on top of the given bitmap, in the appropriate position.
+     * Advances the game by the time that has passed since the last call, using as many fixed physics steps as needed.
+     * <p>
+     *     The time that doesn't fill a whole step is kept for the next call, and it is used to interpolate the bodies'
+     *     positions between the last two steps when drawing. This way, the game can be drawn at any rate while the
+     *     simulation always uses the same step.
+     * </p>
      *
-     * @param  gameMap Bitmap that contains the game's image, where the bodies' sprites will be drawn.
+     * @param  elapsed Time (in millis) since the last call.
      */
-    private void drawBodies(Bitmap gameMap)
+    public void advance(long elapsed)
     {
-        hero.draw(gameMap);
-        destination.draw(gameMap);
-        boo.draw(gameMap);
-        for (int i = 0; i < coins.size(); i++) {
-            Coin coin = coins.get(i);
-            coin.draw(gameMap);
-        }
-        for (int i = 0; i < stars.size(); i++) {
-            Star star = stars.get(i);
-            star.draw(gameMap);
+        accumulator += elapsed;
+        int steps = 0;
+        while(accumulator >= physicsStep && !over)
+        {
+            update(physicsStep);
+            accumulator -= physicsStep;
+            if(++steps == maxStepsPerAdvance)
+            {
+                accumulator = Math.min(accumulator, physicsStep - 1);
+                break;
+            }
         }
+        interpolation = (double) accumulator / physicsStep;
+        publishSnapshot();
     }
 
     /**
      * Updates all of the game's state, namely all of the game's bodies's positions and animations.
+     * <p>
+     *     The events raised during the update are published on the game's event queue as a single batch.
+     * </p>
      *
      * @param  deltaT Time (in millis) since the last update.
      */
     public void update(long deltaT)
+    {
+        step(deltaT);
+        events.publish();
+    }
+
+    /**
+     * Delivers the events published by the updates since the last call (see GameEventQueue.drain).
+     *
+     * @param  listener Listener that receives the events.
+     * @return Number of events delivered.
+     */
+    public int drainEvents(GameEventQueue.Listener listener)
+    {
+        return events.drain(listener);
+    }
+
+    /**
+     * Does the work of an update, raising (but not publishing) the game's events.
+     *
+     * @param  deltaT Time (in millis) since the last update.
+     */
+    private void step(long deltaT)
     {
         //Update the time
         this.timeRemaining -= deltaT;
         if(this.timeRemaining <= 0)
         {
-            setChanged();
-            notifyObservers(GameEvent.LOSS_TIMEUP);
+            this.over = true;
+            events.raise(GameEvent.LOSS_TIMEUP);
             return;
         }
 
@@ -380,77 +651,153 @@ public class Game extends Observable {
         }
 
         hero.updateAnim(deltaT);
+        hero.savePosition();
         ArrayList<Body> collidables = new ArrayList<Body>();
         hero.updatePos(deltaT,map,collidables);
 
         if(hero.isOutofYBounds(map.getMapHeight() - 1))
         {
-            setChanged();
-            notifyObservers(GameEvent.LOSS_OUTOFBOUNDS);
+            this.over = true;
+            events.raise(GameEvent.LOSS_OUTOFBOUNDS);
             return;
         }
 
+        //Find the static bodies the hero may be touching
+        nearbyBodies.clear();
+        staticBodies.query(hero, nearbyBodies);
+
         //Update the destination
         destination.updateAnim(deltaT);
 
-        if(hero.colidesWith(destination))
+        if(nearbyBodies.contains(destination) && hero.colidesWith(destination))
         {
-            setChanged();
-            notifyObservers(GameEvent.WIN);
+            this.over = true;
+            events.raise(GameEvent.WIN);
             return;
         }
 
         //Update the boo
         boo.updateState(hero);
         boo.updateAnim(deltaT);
+        boo.savePosition();
         boo.updatePos(deltaT,map,collidables);
 
         if(hero.colidesWith(boo))
         {
-            setChanged();
-            notifyObservers(GameEvent.LOSS_BOO);
+            this.over = true;
+            events.raise(GameEvent.LOSS_BOO);
             return;
         }
 
-        //Update the coins
-        for(Iterator<Coin> i = coins.iterator(); i.hasNext() ; )
+        //Collect the coins and stars the hero is touching
+        for(int i = 0; i < nearbyBodies.size(); i++)
         {
-            Coin coin = i.next();
-            //Test for collision between hero and coin
-            if(hero.colidesWith(coin))
+            Body body = nearbyBodies.get(i);
+            if(!hero.colidesWith(body))
             {
-                this.score += coin.getValue();
-                setChanged();
-                notifyObservers(GameEvent.SCORE_UPDATE);
-                i.remove();
+                continue;
             }
-            else
+            if(body instanceof Coin)
             {
-                coin.updateAnim(deltaT);
+                Coin coin = (Coin) body;
+                this.score += coin.getValue();
+                events.raise(GameEvent.SCORE_UPDATE);
+                coins.remove(coin);
+                staticBodies.remove(coin);
+                coin.release();
             }
-        }
-
-        //Update the stars
-        for(int i = 0; i < stars.size(); i++)
-        {
-            Star star = stars.get(i);
-            //Test for collision between hero and star
-            if(hero.colidesWith(star))
+            else if(body instanceof Star)
             {
-                if(star.disappear())
+                if(((Star) body).disappear())
                 {
                     hero.restoreJumps();
                 }
             }
-            else
-            {
-                star.updateAnim(deltaT);
-            }
-            star.updateState(deltaT);
+        }
+
+        //Update the coins
+        coinStore.updateAnimations(deltaT);
+
+        //Update the stars (a star that has disappeared isn't animated)
+        starStore.updateAnimations(deltaT);
+        for(int i = 0; i < stars.size(); i++)
+        {
+            stars.get(i).updateState(deltaT);
         }
 
         //Update the foreground
         foreground.update(deltaT);
+
+        //Load the tiles that may be drawn soon
+        if(map.isTiled())
+        {
+            prefetchTiles();
+        }
+    }
+
+    /**
+     * Loads the tiles of the map's graphics around the camera and around the hero (so the camera can be centered on the hero).
+     * <p>
+     *     The tiles are decoded on a background thread, so they rarely have to be decoded while drawing. They are only
+     *     requested again when the camera or the hero reach other tiles.
+     * </p>
+     */
+    private void prefetchTiles()
+    {
+        boolean moved;
+        synchronized (lock1)
+        {
+            Camera cam = Camera.getInstance();
+            int heroX = (int) Math.round(hero.getX());
+            int heroY = (int) Math.round(hero.getY());
+            //The camera's tiles come last, so they are the last ones to be evicted
+            moved = setPrefetchedTiles(0, heroX - cam.getWidth() / 2, heroY - cam.getHeight() / 2,
+                    heroX + cam.getWidth() / 2, heroY + cam.getHeight() / 2);
+            moved |= setPrefetchedTiles(1, cam.getX() - MapImage.tileSize, cam.getY() - MapImage.tileSize,
+                    cam.getX() + cam.getWidth() + MapImage.tileSize, cam.getY() + cam.getHeight() + MapImage.tileSize);
+        }
+        if(!moved)
+        {
+            return;
+        }
+        Rect[] areas = new Rect[prefetchedTiles.length / 4];
+        for(int i = 0; i < areas.length; i++)
+        {
+            areas[i] = new Rect(prefetchedTiles[4 * i] * MapImage.tileSize, prefetchedTiles[4 * i + 1] * MapImage.tileSize,
+                    (prefetchedTiles[4 * i + 2] + 1) * MapImage.tileSize - 1, (prefetchedTiles[4 * i + 3] + 1) * MapImage.tileSize - 1);
+        }
+        map.prefetch(areas);
+    }
+
+    /**
+     * Stores the range of tiles that intersect one of the regions to prefetch.
+     *
+     * @param  area Index of the region.
+     * @param  left x coordinate of the region's leftmost column (inclusive).
+     * @param  top y coordinate of the region's topmost row (inclusive).
+     * @param  right x coordinate of the region's rightmost column (inclusive).
+     * @param  bottom y coordinate of the region's bottommost row (inclusive).
+     * @return Boolean that indicates if the range of tiles changed.
+     */
+    private boolean setPrefetchedTiles(int area, int left, int top, int right, int bottom)
+    {
+        int i = 4 * area;
+        return setPrefetchedTile(i, left) | setPrefetchedTile(i + 1, top) | setPrefetchedTile(i + 2, right) | setPrefetchedTile(i + 3, bottom);
+    }
+
+    /**
+     * Stores one of the limits of the range of tiles of a region to prefetch.
+     *
+     * @param  index Index of the limit on prefetchedTiles.
+     * @param  coordinate Coordinate of the region's limit (in pixels).
+     * @return Boolean that indicates if the limit changed.
+     */
+    private boolean setPrefetchedTile(int index, int coordinate)
+    {
+        int tile = Math.max(coordinate, 0) / MapImage.tileSize;
+        boolean changed = (prefetchedTiles[index] != tile);
+        prefetchedTiles[index] = tile;
+        return changed;
     }
 
     /**
@@ -471,6 +818,17 @@ public class Game extends Observable {
         }
     }
 
+    /**
+     * Sets the way the movement of the hero and of the boo is stopped by collisions (STEPPED by default).
+     *
+     * @param  collisionMode The collision mode.
+     */
+    public void setCollisionMode(CollisionMode collisionMode)
+    {
+        hero.setCollisionMode(collisionMode);
+        boo.setCollisionMode(collisionMode);
+    }
+
     /**
      * Makes the hero jump (if possible).
      */
@@ -499,6 +857,27 @@ public class Game extends Observable {
         this.zoomingOut = newState;
     }
 
+    /**
+     * Returns a hash of the positions of all the game's bodies, used to check that two runs of a game are identical.
+     *
+     * @return Hash of the bodies' positions.
+     */
+    long hashPositions()
+    {
+        long hash = hero.hashPosition(17);
+        hash = boo.hashPosition(hash);
+        hash = destination.hashPosition(hash);
+        for(Coin coin : coins)
+        {
+            hash = coin.hashPosition(hash);
+        }
+        for(int i = 0; i < stars.size(); i++)
+        {
+            hash = stars.get(i).hashPosition(hash);
+        }
+        return foreground.hashPositions(hash);
+    }
+
     /**
      * Getter method for the game's score.
      *
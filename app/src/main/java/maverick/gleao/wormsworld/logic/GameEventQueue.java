@@ -0,0 +1,130 @@
+package maverick.gleao.wormsworld.logic;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * GameEventQueue.java - class used to hand over the events raised by the game's update to the thread that shows them.
+ * <p>
+ *     The events raised during an update are kept in a batch that only the updating thread sees, and the whole batch is
+ *     published at the end of the update with a single atomic operation. The other thread drains every published batch
+ *     at once (usually once per frame), so neither thread ever waits for the other and the listeners never run inside the
+ *     update. Score updates are coalesced: each drain reports at most one of them, since only the latest score matters.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+public class GameEventQueue {
+    /**
+     * Receives the events drained from the queue.
+     */
+    public interface Listener {
+        /**
+         * Called for each event drained from the queue, in the order they were raised.
+         *
+         * @param  event The event.
+         */
+        void onGameEvent(Game.GameEvent event);
+    }
+
+    /**
+     * Batch of events raised during an update, linked to the batch published before it.
+     */
+    private static final class Batch {
+        /**
+         * Events of the batch, in the order they were raised.
+         */
+        private final Game.GameEvent[] events;
+        /**
+         * Batch published right before this one (null if there is none left to drain).
+         */
+        private Batch previous;
+
+        /**
+         * Basic constructor for the Batch class.
+         *
+         * @param  events Events of the batch.
+         */
+        private Batch(Game.GameEvent[] events)
+        {
+            this.events = events;
+        }
+    }
+
+    /**
+     * Latest batch published and not drained yet (the batches are linked from the newest to the oldest).
+     */
+    private final AtomicReference<Batch> published = new AtomicReference<Batch>();
+    /**
+     * Events raised during the current update (only used by the thread that updates the game).
+     */
+    private final ArrayList<Game.GameEvent> pending = new ArrayList<Game.GameEvent>();
+
+    /**
+     * Raises an event (it is only seen by the listeners after the next call to publish).
+     *
+     * @param  event The event.
+     */
+    void raise(Game.GameEvent event)
+    {
+        pending.add(event);
+    }
+
+    /**
+     * Publishes the events raised since the last call, as a single batch.
+     */
+    void publish()
+    {
+        if(pending.isEmpty())
+        {
+            return;
+        }
+        Batch batch = new Batch(pending.toArray(new Game.GameEvent[pending.size()]));
+        pending.clear();
+        Batch head;
+        do
+        {
+            head = published.get();
+            batch.previous = head;
+        } while(!published.compareAndSet(head, batch));
+    }
+
+    /**
+     * Delivers every published event to a listener, in the order they were raised, and removes them from the queue.
+     *
+     * @param  listener Listener that receives the events.
+     * @return Number of events delivered.
+     */
+    public int drain(Listener listener)
+    {
+        Batch batch = published.getAndSet(null);
+        //The batches are linked from the newest to the oldest, so the list is reversed first
+        Batch oldest = null;
+        while(batch != null)
+        {
+            Batch previous = batch.previous;
+            batch.previous = oldest;
+            oldest = batch;
+            batch = previous;
+        }
+        int delivered = 0;
+        boolean scoreUpdated = false;
+        for(batch = oldest; batch != null; batch = batch.previous)
+        {
+            for(Game.GameEvent event : batch.events)
+            {
+                if(event == Game.GameEvent.SCORE_UPDATE)
+                {
+                    if(scoreUpdated)
+                    {
+                        continue;
+                    }
+                    scoreUpdated = true;
+                }
+                listener.onGameEvent(event);
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+}
@@ -5,10 +5,22 @@ import android.graphics.Color;
 import android.graphics.Rect;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Map.java - class used to store a game's map.
+ * <p>
+ *     The collision data takes about 1.5 bytes per pixel of the key (measured over the game's levels): 1/4 for the
+ *     packed grid, 1/8 for the solid bitset, 1/16 for the summed-area table and 1 for the distance field, plus a few
+ *     hundredths for the column spans.
+ * </p>
  * @author  Gonçalo Leão
  * @author  José Gomes
  */
@@ -36,17 +48,113 @@ class Map {
     }
 
     /**
-     * Bitmap containing the map's graphics.
+     * Image containing the map's graphics.
      */
-    private Bitmap map;
+    private MapImage map;
     /**
-     * Bitmap containing the map's background graphics.
+     * Image containing the map's background graphics (null if the map has no background).
      */
-    private Bitmap background;
+    private MapImage background;
     /**
-     * Bitmap containing the type of block in each pixel of the map.
+     * Array used to convert a block's ordinal (as stored on the packed grid) back to its type.
      */
-    private Block[][] key;
+    private static final Block[] blocks = Block.values();
+
+    /**
+     * Number of bits used to store the type of block of each pixel.
+     */
+    private static final int bitsPerBlock = 2;
+    /**
+     * Number of pixels whose type of block fits in a single word of the packed grid.
+     */
+    private static final int blocksPerWord = Long.SIZE / bitsPerBlock;
+    /**
+     * Mask used to extract the type of block of a single pixel from a word of the packed grid.
+     */
+    private static final long blockMask = (1L << bitsPerBlock) - 1;
+
+    /**
+     * Number of rows of the key bitmap read with a single call while decoding it.
+     */
+    private static final int keyRowsPerBatch = 32;
+
+    /**
+     * Width of the map (in pixels).
+     */
+    private int width;
+    /**
+     * Height of the map (in pixels).
+     */
+    private int height;
+    /**
+     * Number of words used by each row of the packed grid.
+     */
+    private int keyWordsPerRow;
+    /**
+     * Packed grid containing the type of block in each pixel of the map (2 bits per pixel, each row starts on a new word).
+     */
+    private long[] key;
+    /**
+     * Number of words used by each row of the solid bitset.
+     */
+    private int solidWordsPerRow;
+    /**
+     * Bitset indicating which pixels of the map are tangible (1 bit per pixel, each row starts on a new word).
+     */
+    private long[] solid;
+    /**
+     * Base 2 logarithm of the side (in pixels) of the square blocks counted by the summed-area table (8x8).
+     */
+    private static final int sumShift = 3;
+    /**
+     * Number of entries on each row of the summed-area table.
+     */
+    private int sumColumns;
+    /**
+     * Summed-area table of the solid bitset, over 8x8 blocks: entry (i,j) holds the number of tangible pixels above
+     * row 8j and to the left of column 8i.
+     * <p>
+     *     It has one more row and column than there are blocks, so the sums can be read without bounds checks. Storing
+     *     one sum per block instead of one per pixel takes 1/16 of a byte per pixel (instead of 4); the pixels of a
+     *     rectangle that don't fill whole blocks are counted on the solid bitset instead, one word (64 pixels) at a time.
+     * </p>
+     */
+    private int[] blockSums;
+    /**
+     * Distance field of the map: entry (x,y) holds the chessboard distance from pixel (x,y) to the nearest tangible
+     * pixel (0 for tangible pixels), saturated at maxDistance.
+     */
+    private byte[] distances;
+    /**
+     * Maximum value stored on the distance field (larger distances are stored as this value).
+     */
+    private static final int maxDistance = 255;
+    /**
+     * Index of the first tangible span of each column on the span arrays (the spans of column x are stored from
+     * spanStarts[x] up to spanStarts[x + 1], exclusive).
+     */
+    private int[] spanStarts;
+    /**
+     * y coordinate of the topmost pixel (the surface) of each vertical span of tangible pixels, ordered by column and then by row.
+     */
+    private int[] spanTops;
+    /**
+     * y coordinate of the bottommost pixel of each vertical span of tangible pixels, ordered like spanTops.
+     */
+    private int[] spanBottoms;
+    /**
+     * Coordinates of the map's stars, stored as consecutive (x,y) pairs.
+     */
+    private int[] starPositions;
+    /**
+     * Index of the standing positions of each collision shape used to place bodies on the map (built when first needed,
+     * or read from the cache file).
+     */
+    private final HashMap<CollisionShape,SpawnIndex> spawnIndexes = new HashMap<CollisionShape,SpawnIndex>();
+    /**
+     * Number of standing position indexes read from the cache file (0 if the map was decoded from its key image).
+     */
+    private int cachedSpawnIndexes;
 
     /**
      * A constructor for the Map class that receives bitmaps for the map and background's graphics and a special bitmap to load the block type of each pixel.
@@ -56,50 +164,227 @@ class Map {
      * @param  background Bitmap containing the map's background graphics.
      */
     Map(Bitmap map, Bitmap mapKey, Bitmap background)
+    {
+        this(new MapImage(map), new MapImage(mapKey), (background == null ? null : new MapImage(background)));
+    }
+
+    /**
+     * A constructor for the Map class that receives images for the map and background's graphics and a special image to load the block type of each pixel.
+     * <p>
+     *     The images may be split into tiles (for large levels): the key is decoded a few rows at a time.
+     * </p>
+     *
+     * @param  map Image containing the map's graphics.
+     * @param  mapKey Image containing the block type of each pixel (the image uses color coding).
+     * @param  background Image containing the map's background graphics.
+     */
+    Map(MapImage map, MapImage mapKey, MapImage background)
     {
         this.map = map;
         this.background = background;
-        int width = map.getWidth();
-        int height = map.getHeight();
-        key = new Block[height][width];
-        for(int y = 0; y < height; y++)
+        this.width = mapKey.getWidth();
+        this.height = mapKey.getHeight();
+        this.keyWordsPerRow = (width + blocksPerWord - 1) / blocksPerWord;
+        this.key = new long[height * keyWordsPerRow];
+        this.solidWordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        this.solid = new long[height * solidWordsPerRow];
+        decodeKey(mapKey);
+        findStars();
+        buildIndexes();
+    }
+
+    /**
+     * A constructor for the Map class that receives images for the map and background's graphics and the collision
+     * data of the map, previously stored with writeCache (usually on a MapCache file).
+     * <p>
+     *     Every array (the key, the bitset and the indexes built from them, standing positions included) is read from
+     *     the buffer with bulk copies, so nothing has to be rebuilt.
+     * </p>
+     *
+     * @param  map Image containing the map's graphics.
+     * @param  data Buffer containing the map's collision data, as written by writeCache.
+     * @param  background Image containing the map's background graphics.
+     */
+    Map(MapImage map, ByteBuffer data, MapImage background)
+    {
+        this.map = map;
+        this.background = background;
+        this.width = data.getInt();
+        this.height = data.getInt();
+        this.keyWordsPerRow = (width + blocksPerWord - 1) / blocksPerWord;
+        this.key = new long[height * keyWordsPerRow];
+        this.solidWordsPerRow = (width + Long.SIZE - 1) / Long.SIZE;
+        this.solid = new long[height * solidWordsPerRow];
+        this.starPositions = new int[2 * data.getInt()];
+        data.getInt(); //padding, so the words are aligned
+        data.asLongBuffer().get(key).get(solid);
+        data.position(data.position() + (key.length + solid.length) * (Long.SIZE / Byte.SIZE));
+
+        IntBuffer ints = data.asIntBuffer();
+        ints.get(starPositions);
+        allocateSolidSums();
+        ints.get(blockSums);
+        this.spanStarts = new int[width + 1];
+        ints.get(spanStarts);
+        this.spanTops = new int[spanStarts[width]];
+        this.spanBottoms = new int[spanStarts[width]];
+        ints.get(spanTops).get(spanBottoms);
+        int nSpawnIndexes = ints.get();
+        for(int i = 0; i < nSpawnIndexes; i++)
         {
-            for(int x = 0; x < width; x++)
+            int[] rects = new int[ints.get()];
+            ints.get(rects);
+            spawnIndexes.put(new CollisionShape(rects), new SpawnIndex(ints));
+        }
+        this.cachedSpawnIndexes = nSpawnIndexes;
+        data.position(data.position() + ints.position() * (Integer.SIZE / Byte.SIZE));
+
+        this.distances = new byte[width * height];
+        data.get(distances);
+    }
+
+    /**
+     * Decodes the key image into the packed grid and the solid bitset.
+     * <p>
+     *     The rows are split into one band per core and decoded in parallel: since every row of the packed grid and
+     *     of the bitset starts on a new word, the bands never write to the same word.
+     * </p>
+     *
+     * @param  mapKey Image containing the block type of each pixel (the image uses color coding).
+     */
+    private void decodeKey(final MapImage mapKey)
+    {
+        int nThreads = Math.min(Runtime.getRuntime().availableProcessors(), (height + keyRowsPerBatch - 1) / keyRowsPerBatch);
+        if(nThreads <= 1)
+        {
+            decodeKeyRows(mapKey, 0, height);
+            return;
+        }
+
+        int rowsPerBand = (height + nThreads - 1) / nThreads;
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        ArrayList<Future<?>> bands = new ArrayList<Future<?>>();
+        for(int first = 0; first < height; first += rowsPerBand)
+        {
+            final int firstRow = first;
+            final int lastRow = Math.min(first + rowsPerBand, height);
+            bands.add(pool.submit(new Runnable() {
+                public void run() {
+                    decodeKeyRows(mapKey, firstRow, lastRow);
+                }
+            }));
+        }
+        pool.shutdown();
+
+        for(int i = 0; i < bands.size(); i++)
+        {
+            try {
+                bands.get(i).get();
+            } catch (Exception e) {
+                //Decode the band again on this thread (decoding the same row twice is harmless)
+                e.printStackTrace();
+                int firstRow = i * rowsPerBand;
+                decodeKeyRows(mapKey, firstRow, Math.min(firstRow + rowsPerBand, height));
+            }
+        }
+    }
+
+    /**
+     * Decodes a band of rows of the key bitmap, reading several rows at a time.
+     *
+     * @param  mapKey Image containing the block type of each pixel (the image uses color coding).
+     * @param  firstRow First row of the band (inclusive).
+     * @param  lastRow Last row of the band (exclusive).
+     */
+    private void decodeKeyRows(MapImage mapKey, int firstRow, int lastRow)
+    {
+        int[] pixels = new int[width * Math.min(keyRowsPerBatch, lastRow - firstRow)];
+        for(int batchStart = firstRow; batchStart < lastRow; batchStart += keyRowsPerBatch)
+        {
+            int rows = Math.min(keyRowsPerBatch, lastRow - batchStart);
+            mapKey.getPixels(pixels, batchStart, rows);
+            for(int row = 0; row < rows; row++)
             {
-                key[y][x] = keyToType(mapKey.getPixel(x,y));
+                int y = batchStart + row;
+                int offset = row * width;
+                for(int x = 0; x < width; x++)
+                {
+                    setBlock(x, y, keyToType(pixels[offset + x]));
+                }
             }
         }
     }
 
     /**
-     * Getter method that returns the map's bitmap.
+     * Returns a mutable bitmap with a rectangular region of the map's graphics, where the bodies can be drawn.
      *
-     * @return Bitmap containing the map's graphics.
+     * @param  x x coordinate of the region's upper left corner.
+     * @param  y y coordinate of the region's upper left corner.
+     * @param  regionWidth Width of the region.
+     * @param  regionHeight Height of the region.
+     * @return Bitmap containing the region of the map's graphics.
      */
-    Bitmap getGameMap()
+    Bitmap getGameMap(int x, int y, int regionWidth, int regionHeight)
     {
-        return map;
+        return map.getRegion(x, y, regionWidth, regionHeight, true);
     }
 
     /**
-     * Getter method that returns the background's bitmap.
+     * Returns a bitmap with a rectangular region of the map's background graphics.
      *
-     * @return Bitmap containing the map's background graphics.
+     * @param  x x coordinate of the region's upper left corner.
+     * @param  y y coordinate of the region's upper left corner.
+     * @param  regionWidth Width of the region.
+     * @param  regionHeight Height of the region.
+     * @return Bitmap containing the region of the map's background graphics (null if the map has no background).
      */
-    Bitmap getBackground()
+    Bitmap getBackground(int x, int y, int regionWidth, int regionHeight)
     {
-        return background;
+        if(background == null)
+        {
+            return null;
+        }
+        return background.getRegion(x, y, regionWidth, regionHeight, false);
+    }
+
+    /**
+     * Indicates if the map's graphics are split into tiles, which are only kept in memory near the camera.
+     *
+     * @return Boolean that indicates if the map's graphics are split into tiles.
+     */
+    boolean isTiled()
+    {
+        return map.isTiled();
+    }
+
+    /**
+     * Starts loading the tiles of the map's graphics (and background) that intersect a group of rectangular regions,
+     * on a background thread.
+     *
+     * @param  areas Regions of the map.
+     */
+    void prefetch(Rect... areas)
+    {
+        map.prefetch(areas);
+        if(background != null)
+        {
+            background.prefetch(areas);
+        }
     }
 
     /**
      * Returns the type of block associated with a color.
      *
+     * <p>
+     *     Colors that are not part of the key are treated as NORMAL blocks (just like before, they are tangible).
+     * </p>
+     *
      * @param color Color on the bitmap.
-     * @return Bitmap containing the map's background graphics.
+     * @return Type of block associated with the color.
      */
     private static Block keyToType(int color)
     {
-        Block type = null;
+        Block type = Block.NORMAL;
 
         switch(color)
         {
@@ -120,6 +405,58 @@ class Map {
         return type;
     }
 
+    /**
+     * Determines if a type of block is tangible.
+     *
+     * @param  type Type of block.
+     * @return Boolean that indicates if the type of block is tangible.
+     */
+    private static boolean isTangible(Block type)
+    {
+        return (type != Block.NONE) && (type != Block.STAR);
+    }
+
+    /**
+     * Stores the type of block of a pixel on the packed grid and on the solid bitset.
+     *
+     * @param  x x coordinate on the map.
+     * @param  y y coordinate on the map.
+     * @param  type Type of block of the pixel.
+     */
+    private void setBlock(int x, int y, Block type)
+    {
+        int keyIndex = y * keyWordsPerRow + x / blocksPerWord;
+        int shift = (x % blocksPerWord) * bitsPerBlock;
+        key[keyIndex] = (key[keyIndex] & ~(blockMask << shift)) | ((long) type.ordinal() << shift);
+
+        int solidIndex = y * solidWordsPerRow + (x >>> 6);
+        if(isTangible(type))
+        {
+            solid[solidIndex] |= (1L << x);
+        }
+        else
+        {
+            solid[solidIndex] &= ~(1L << x);
+        }
+    }
+
+    /**
+     * Returns the type of block of a pixel of the map.
+     *
+     * @param  x x coordinate on the map.
+     * @param  y y coordinate on the map.
+     * @return Type of block of the pixel (NONE if the pixel is outside the map).
+     */
+    Block getBlock(int x, int y)
+    {
+        if(x < 0 || x >= width || y < 0 || y >= height)
+        {
+            return Block.NONE;
+        }
+        long word = key[y * keyWordsPerRow + x / blocksPerWord];
+        return blocks[(int) ((word >>> ((x % blocksPerWord) * bitsPerBlock)) & blockMask)];
+    }
+
     /**
      * Determines if the block of the map is tangible.
      *
@@ -129,55 +466,454 @@ class Map {
      */
     boolean isTangible(int x, int y)
     {
-        if(x < 0 || x >= getMapWidth() || y < 0 || y >= getMapHeight())
+        if(x < 0 || x >= width || y < 0 || y >= height)
         {
             return false;
         }
 
+        return (solid[y * solidWordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Builds the structures used to speed up the collision queries, from the solid bitset.
+     */
+    private void buildIndexes()
+    {
+        buildSolidSums();
+        buildDistances();
+        buildSpans();
+    }
 
-        if((key[y][x] == Block.NONE) || (key[y][x] == Block.STAR))
+    /**
+     * Builds the index of the vertical spans of tangible pixels of each column, from the solid bitset.
+     */
+    private void buildSpans()
+    {
+        //First pass: count the spans of each column
+        spanStarts = new int[width + 1];
+        for(int y = 0; y < height; y++)
         {
-            return false;
+            for(int x = 0; x < width; x++)
+            {
+                if(isTangible(x,y) && !isTangible(x,y - 1))
+                {
+                    spanStarts[x + 1]++;
+                }
+            }
         }
-        else
+        for(int x = 0; x < width; x++)
+        {
+            spanStarts[x + 1] += spanStarts[x];
+        }
+
+        //Second pass: fill the spans, row by row, so each column's spans are sorted from top to bottom
+        spanTops = new int[spanStarts[width]];
+        spanBottoms = new int[spanStarts[width]];
+        int[] nextTop = new int[width];
+        int[] nextBottom = new int[width];
+        System.arraycopy(spanStarts, 0, nextTop, 0, width);
+        System.arraycopy(spanStarts, 0, nextBottom, 0, width);
+        for(int y = 0; y < height; y++)
         {
-            return true;
+            for(int x = 0; x < width; x++)
+            {
+                if(!isTangible(x,y))
+                {
+                    continue;
+                }
+                if(!isTangible(x,y - 1))
+                {
+                    spanTops[nextTop[x]++] = y;
+                }
+                if(!isTangible(x,y + 1))
+                {
+                    spanBottoms[nextBottom[x]++] = y;
+                }
+            }
         }
     }
 
     /**
-     * Determines if a rectangle has one of its pixels colliding with one of the map's solid blocks.
+     * Finds the first tangible pixel of a column of the map, at or below a given row, with a binary search on the column's spans.
      *
-     * @param  r Rectangle to check for collision.
-     * @return Boolean that indicates if the rectangle collides with the map.
+     * @param  x x coordinate of the column.
+     * @param  y y coordinate of the row where the search starts.
+     * @return y coordinate of the first tangible pixel found (-1 if there is none).
      */
-    boolean collidesWith(Rect r)
+    int findGround(int x, int y)
+    {
+        if(x < 0 || x >= width)
+        {
+            return -1;
+        }
+        y = Math.max(y, 0);
+
+        //Find the first span that ends at or below y
+        int low = spanStarts[x];
+        int high = spanStarts[x + 1];
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(spanBottoms[middle] < y)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        if(low == spanStarts[x + 1])
+        {
+            return -1;
+        }
+        return Math.max(spanTops[low], y);
+    }
+
+    /**
+     * Finds the first non tangible pixel of a column of the map, at or below a given row, with a binary search on the column's spans.
+     *
+     * @param  x x coordinate of the column.
+     * @param  y y coordinate of the row where the search starts.
+     * @return y coordinate of the first non tangible pixel found (it may be the map's height, below the last row).
+     */
+    int findGap(int x, int y)
+    {
+        if(x < 0 || x >= width || y < 0)
+        {
+            return y;
+        }
+
+        //Find the first span that ends at or below y
+        int low = spanStarts[x];
+        int high = spanStarts[x + 1];
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(spanBottoms[middle] < y)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        if(low < spanStarts[x + 1] && spanTops[low] <= y)
+        {
+            return spanBottoms[low] + 1;
+        }
+        return y;
+    }
+
+    /**
+     * Returns how many pixels a rectangle can move down without colliding with the map.
+     *
+     * @param  left x coordinate of the rectangle's leftmost column (inclusive).
+     * @param  top y coordinate of the rectangle's topmost row (inclusive).
+     * @param  right x coordinate of the rectangle's rightmost column (inclusive).
+     * @param  bottom y coordinate of the rectangle's bottommost row (inclusive).
+     * @return Number of pixels the rectangle can fall (0 if it is standing on the ground, -1 if it is already colliding
+     *         with the map and Integer.MAX_VALUE if there is no ground below it).
+     */
+    int getDropDistance(int left, int top, int right, int bottom)
+    {
+        if(collidesWith(left, top, right, bottom))
+        {
+            return -1;
+        }
+        int firstColumn = Math.max(left, 0);
+        int lastColumn = Math.min(right, width - 1);
+        int drop = Integer.MAX_VALUE;
+        for(int x = firstColumn; x <= lastColumn && drop > 0; x++)
+        {
+            int ground = findGround(x, bottom + 1);
+            if(ground >= 0)
+            {
+                drop = Math.min(drop, ground - (bottom + 1));
+            }
+        }
+        return drop;
+    }
+
+    /**
+     * Builds the distance field of the map, using the two-pass chamfer algorithm (which is exact for chessboard distances).
+     */
+    private void buildDistances()
     {
-        for(int y = r.top; y <= r.bottom; y++)
+        distances = new byte[width * height];
+
+        //Forward pass: neighbours to the left and above
+        for(int y = 0; y < height; y++)
         {
-            for(int x = r.left; x <= r.right; x++)
+            for(int x = 0; x < width; x++)
             {
+                int i = y * width + x;
+                int d = maxDistance;
                 if(isTangible(x,y))
                 {
-                    return true;
+                    d = 0;
+                }
+                else
+                {
+                    if(x > 0)
+                    {
+                        d = Math.min(d, (distances[i - 1] & 0xFF) + 1);
+                    }
+                    if(y > 0)
+                    {
+                        int above = i - width;
+                        d = Math.min(d, (distances[above] & 0xFF) + 1);
+                        if(x > 0)
+                        {
+                            d = Math.min(d, (distances[above - 1] & 0xFF) + 1);
+                        }
+                        if(x < width - 1)
+                        {
+                            d = Math.min(d, (distances[above + 1] & 0xFF) + 1);
+                        }
+                    }
+                }
+                distances[i] = (byte) Math.min(d, maxDistance);
+            }
+        }
+
+        //Backward pass: neighbours to the right and below
+        for(int y = height - 1; y >= 0; y--)
+        {
+            for(int x = width - 1; x >= 0; x--)
+            {
+                int i = y * width + x;
+                int d = distances[i] & 0xFF;
+                if(d == 0)
+                {
+                    continue;
                 }
+                if(x < width - 1)
+                {
+                    d = Math.min(d, (distances[i + 1] & 0xFF) + 1);
+                }
+                if(y < height - 1)
+                {
+                    int below = i + width;
+                    d = Math.min(d, (distances[below] & 0xFF) + 1);
+                    if(x > 0)
+                    {
+                        d = Math.min(d, (distances[below - 1] & 0xFF) + 1);
+                    }
+                    if(x < width - 1)
+                    {
+                        d = Math.min(d, (distances[below + 1] & 0xFF) + 1);
+                    }
+                }
+                distances[i] = (byte) Math.min(d, maxDistance);
             }
         }
-        return false;
     }
 
     /**
-     * Returns the width of the map.
+     * Returns how far a rectangle can be moved (in any direction, one pixel per step along each axis) without colliding with the map.
+     * <p>
+     *     The distance field is read at the rectangle's center: every pixel of the rectangle moved by n steps stays
+     *     within (half extent + n) of the center, so it can't reach any tangible pixel while that value is smaller
+     *     than the center's distance.
+     * </p>
      *
-     * @return Width of the map (in pixels).
+     * @param  left x coordinate of the rectangle's leftmost column (inclusive).
+     * @param  top y coordinate of the rectangle's topmost row (inclusive).
+     * @param  right x coordinate of the rectangle's rightmost column (inclusive).
+     * @param  bottom y coordinate of the rectangle's bottommost row (inclusive).
+     * @return Number of steps the rectangle can take without colliding (negative if it may already be colliding).
      */
-    int getMapWidth()
+    int getClearance(int left, int top, int right, int bottom)
+    {
+        int centerX = (left + right) >> 1;
+        int centerY = (top + bottom) >> 1;
+        if(centerX < 0 || centerX >= width || centerY < 0 || centerY >= height)
+        {
+            //The distance field doesn't cover this rectangle, so it must be tested pixel by pixel
+            return -1;
+        }
+        int halfExtent = Math.max(Math.max(centerX - left, right - centerX), Math.max(centerY - top, bottom - centerY));
+        return (distances[centerY * width + centerX] & 0xFF) - halfExtent - 1;
+    }
+
+    /**
+     * Allocates the summed-area table, with one entry per 8x8 block plus one row and one column.
+     */
+    private void allocateSolidSums()
+    {
+        int blockColumns = (width + (1 << sumShift) - 1) >> sumShift;
+        int blockRows = (height + (1 << sumShift) - 1) >> sumShift;
+        sumColumns = blockColumns + 1;
+        blockSums = new int[sumColumns * (blockRows + 1)];
+    }
+
+    /**
+     * Builds the summed-area table of the map's tangible pixels, over 8x8 blocks.
+     * <p>
+     *     The blocks start on multiples of 8, so the 8 pixels of a block's row always lie on the same word of the solid bitset.
+     * </p>
+     */
+    private void buildSolidSums()
+    {
+        allocateSolidSums();
+        int blockColumns = sumColumns - 1;
+        int blockRows = blockSums.length / sumColumns - 1;
+        for(int blockY = 0; blockY < blockRows; blockY++)
+        {
+            int rowSum = 0;
+            int above = blockY * sumColumns;
+            int current = above + sumColumns;
+            int firstRow = blockY << sumShift;
+            int lastRow = Math.min(firstRow + (1 << sumShift), height);
+            for(int blockX = 0; blockX < blockColumns; blockX++)
+            {
+                int left = blockX << sumShift;
+                int word = left >>> 6;
+                int shift = left & 63;
+                for(int y = firstRow; y < lastRow; y++)
+                {
+                    rowSum += Long.bitCount((solid[y * solidWordsPerRow + word] >>> shift) & 0xFF);
+                }
+                blockSums[current + blockX + 1] = blockSums[above + blockX + 1] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Counts the tangible pixels of a segment of a row of the map, on the solid bitset.
+     *
+     * @param  y y coordinate of the row (inside the map).
+     * @param  left x coordinate of the segment's leftmost column (inclusive, inside the map).
+     * @param  right x coordinate of the segment's rightmost column (inclusive, inside the map).
+     * @return Number of tangible pixels of the segment.
+     */
+    private int countTangible(int y, int left, int right)
+    {
+        int row = y * solidWordsPerRow;
+        int firstWord = left >>> 6;
+        int lastWord = right >>> 6;
+        //Shifts only use the 6 lowest bits of the distance, so these keep the bits from left and up to right on their words
+        long firstMask = -1L << left;
+        long lastMask = -1L >>> (63 - (right & 63));
+        if(firstWord == lastWord)
+        {
+            return Long.bitCount(solid[row + firstWord] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(solid[row + firstWord] & firstMask);
+        for(int word = firstWord + 1; word < lastWord; word++)
+        {
+            count += Long.bitCount(solid[row + word]);
+        }
+        return count + Long.bitCount(solid[row + lastWord] & lastMask);
+    }
+
+    /**
+     * Counts the tangible pixels inside a rectangle.
+     * <p>
+     *     The whole 8x8 blocks inside the rectangle are counted with four lookups on the summed-area table, and the
+     *     rows of its edges that don't fill whole blocks (at most 7 on each side) are counted on the solid bitset.
+     * </p>
+     *
+     * @param  left x coordinate of the rectangle's leftmost column (inclusive).
+     * @param  top y coordinate of the rectangle's topmost row (inclusive).
+     * @param  right x coordinate of the rectangle's rightmost column (inclusive).
+     * @param  bottom y coordinate of the rectangle's bottommost row (inclusive).
+     * @return Number of tangible pixels inside the rectangle.
+     */
+    int countTangible(int left, int top, int right, int bottom)
     {
-        if(key.length == 0)
+        //Pixels outside the map are never tangible
+        left = Math.max(left, 0);
+        top = Math.max(top, 0);
+        right = Math.min(right, width - 1);
+        bottom = Math.min(bottom, height - 1);
+        if(left > right || top > bottom)
         {
             return 0;
         }
-        return key[0].length;
+
+        //Whole blocks inside the rectangle: columns [blockLeft, blockRight) and rows [blockTop, blockBottom)
+        int blockLeft = (left + (1 << sumShift) - 1) >> sumShift;
+        int blockRight = (right + 1) >> sumShift;
+        int blockTop = (top + (1 << sumShift) - 1) >> sumShift;
+        int blockBottom = (bottom + 1) >> sumShift;
+        if(blockLeft >= blockRight || blockTop >= blockBottom)
+        {
+            int count = 0;
+            for(int y = top; y <= bottom; y++)
+            {
+                count += countTangible(y, left, right);
+            }
+            return count;
+        }
+
+        int upper = blockTop * sumColumns;
+        int lower = blockBottom * sumColumns;
+        int count = blockSums[lower + blockRight] - blockSums[upper + blockRight] - blockSums[lower + blockLeft] + blockSums[upper + blockLeft];
+        int innerLeft = blockLeft << sumShift;
+        int innerRight = (blockRight << sumShift) - 1;
+        int innerTop = blockTop << sumShift;
+        int innerBottom = (blockBottom << sumShift) - 1;
+        for(int y = top; y < innerTop; y++)
+        {
+            count += countTangible(y, left, right);
+        }
+        for(int y = innerTop; y <= innerBottom; y++)
+        {
+            if(left < innerLeft)
+            {
+                count += countTangible(y, left, innerLeft - 1);
+            }
+            if(right > innerRight)
+            {
+                count += countTangible(y, innerRight + 1, right);
+            }
+        }
+        for(int y = innerBottom + 1; y <= bottom; y++)
+        {
+            count += countTangible(y, left, right);
+        }
+        return count;
+    }
+
+    /**
+     * Determines if a rectangle has one of its pixels colliding with one of the map's solid blocks.
+     *
+     * @param  r Rectangle to check for collision.
+     * @return Boolean that indicates if the rectangle collides with the map.
+     */
+    boolean collidesWith(Rect r)
+    {
+        return collidesWith(r.left, r.top, r.right, r.bottom);
+    }
+
+    /**
+     * Determines if a rectangle, given by its limits, has one of its pixels colliding with one of the map's solid blocks.
+     * <p>
+     *     The tangible pixels of the rectangle are counted with the summed-area table, so the cost doesn't depend on its size.
+     * </p>
+     *
+     * @param  left x coordinate of the rectangle's leftmost column (inclusive).
+     * @param  top y coordinate of the rectangle's topmost row (inclusive).
+     * @param  right x coordinate of the rectangle's rightmost column (inclusive).
+     * @param  bottom y coordinate of the rectangle's bottommost row (inclusive).
+     * @return Boolean that indicates if the rectangle collides with the map.
+     */
+    boolean collidesWith(int left, int top, int right, int bottom)
+    {
+        return countTangible(left, top, right, bottom) != 0;
+    }
+
+    /**
+     * Returns the width of the map.
+     *
+     * @return Width of the map (in pixels).
+     */
+    int getMapWidth()
+    {
+        return width;
     }
 
     /**
@@ -187,30 +923,212 @@ class Map {
      */
     int getMapHeight()
     {
-        return key.length;
+        return height;
     }
 
     /**
-     * Returns the list of stars of the map, associated with each block whose type is STAR.
-     *
-     * @return List of all the stars of the map.
+     * Finds the positions of the map's stars.
+     * <p>
+     *     Each group of connected (horizontally, vertically or diagonally) blocks whose type is STAR is a single star,
+     *     placed on the upper left corner of the group's bounding box.
+     * </p>
      */
-    ArrayList<Star> getStars()
+    private void findStars()
     {
-        ArrayList<Star> stars = new ArrayList<Star>();
-        int width = map.getWidth();
-        int height = map.getHeight();
+        ArrayList<Integer> positions = new ArrayList<Integer>();
+        long[] visited = new long[solid.length];
+        int[] pending = new int[64];
         for(int y = 0; y < height; y++)
         {
-            for(int x = 0; x < width; x++)
+            int rowStart = y * keyWordsPerRow;
+            for(int w = 0; w < keyWordsPerRow; w++)
             {
-                if(Block.STAR == key[y][x])
+                long word = key[rowStart + w];
+                //Skip words with no STAR blocks (STAR is the only type with both bits set)
+                long starBits = word & (word >>> 1) & 0x5555555555555555L;
+                while(starBits != 0)
                 {
-                    Star star = new Star(x,y);
-                    stars.add(star);
+                    int bit = Long.numberOfTrailingZeros(starBits);
+                    starBits &= starBits - 1;
+                    int x = w * blocksPerWord + bit / bitsPerBlock;
+                    if(isVisited(visited, x, y))
+                    {
+                        continue;
+                    }
+
+                    //Flood fill the group of STAR blocks, finding its bounding box
+                    int minX = x;
+                    int minY = y;
+                    int nPending = 0;
+                    pending[nPending++] = y * width + x;
+                    setVisited(visited, x, y);
+                    while(nPending > 0)
+                    {
+                        int pixel = pending[--nPending];
+                        int px = pixel % width;
+                        int py = pixel / width;
+                        minX = Math.min(minX, px);
+                        minY = Math.min(minY, py);
+                        for(int ny = py - 1; ny <= py + 1; ny++)
+                        {
+                            for(int nx = px - 1; nx <= px + 1; nx++)
+                            {
+                                if(getBlock(nx, ny) == Block.STAR && !isVisited(visited, nx, ny))
+                                {
+                                    setVisited(visited, nx, ny);
+                                    if(nPending == pending.length)
+                                    {
+                                        pending = Arrays.copyOf(pending, 2 * pending.length);
+                                    }
+                                    pending[nPending++] = ny * width + nx;
+                                }
+                            }
+                        }
+                    }
+                    positions.add(minX);
+                    positions.add(minY);
                 }
             }
         }
+
+        starPositions = new int[positions.size()];
+        for(int i = 0; i < starPositions.length; i++)
+        {
+            starPositions[i] = positions.get(i);
+        }
+    }
+
+    /**
+     * Indicates if a pixel has been marked on a bitset with the same layout as the solid bitset.
+     *
+     * @param  bits Bitset with the same layout as the solid bitset.
+     * @param  x x coordinate on the map.
+     * @param  y y coordinate on the map.
+     * @return Boolean that indicates if the pixel has been marked.
+     */
+    private boolean isVisited(long[] bits, int x, int y)
+    {
+        return (bits[y * solidWordsPerRow + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Marks a pixel on a bitset with the same layout as the solid bitset.
+     *
+     * @param  bits Bitset with the same layout as the solid bitset.
+     * @param  x x coordinate on the map.
+     * @param  y y coordinate on the map.
+     */
+    private void setVisited(long[] bits, int x, int y)
+    {
+        bits[y * solidWordsPerRow + (x >>> 6)] |= (1L << x);
+    }
+
+    /**
+     * Returns the index of the positions where a body with a given collision shape can stand on the map.
+     *
+     * @param  shape The body's collision shape.
+     * @return The index for the shape.
+     */
+    SpawnIndex getSpawnIndex(CollisionShape shape)
+    {
+        synchronized (spawnIndexes)
+        {
+            SpawnIndex index = spawnIndexes.get(shape);
+            if(index == null)
+            {
+                index = new SpawnIndex(this, shape);
+                spawnIndexes.put(shape, index);
+            }
+            return index;
+        }
+    }
+
+    /**
+     * Returns the list of stars of the map, one for each group of connected blocks whose type is STAR.
+     *
+     * @param  store Store where the stars' state is to be kept.
+     * @return List of all the stars of the map.
+     */
+    ArrayList<Star> getStars(BodyStore store)
+    {
+        ArrayList<Star> stars = new ArrayList<Star>(starPositions.length / 2);
+        for(int i = 0; i < starPositions.length; i += 2)
+        {
+            Star star = new Star(store,starPositions[i],starPositions[i + 1]);
+            stars.add(star);
+        }
         return stars;
     }
+
+    /**
+     * Indicates if standing position indexes were built since the map was decoded or read from the cache file, so
+     * saving the map again would spare building them on the next load.
+     *
+     * @return Boolean that indicates if the map has indexes that aren't on the cache file.
+     */
+    boolean hasNewSpawnIndexes()
+    {
+        synchronized (spawnIndexes)
+        {
+            return spawnIndexes.size() > cachedSpawnIndexes;
+        }
+    }
+
+    /**
+     * Returns the number of bytes needed to store the map's collision data with writeCache.
+     *
+     * @return Number of bytes written by writeCache.
+     */
+    int getCacheSize()
+    {
+        int ints = starPositions.length + blockSums.length + spanStarts.length + spanTops.length + spanBottoms.length + 1;
+        synchronized (spawnIndexes)
+        {
+            for(java.util.Map.Entry<CollisionShape,SpawnIndex> entry : spawnIndexes.entrySet())
+            {
+                ints += 1 + entry.getKey().getRects().length + entry.getValue().getDataSize();
+            }
+        }
+        return 4 * (Integer.SIZE / Byte.SIZE) + (key.length + solid.length) * (Long.SIZE / Byte.SIZE)
+                + ints * (Integer.SIZE / Byte.SIZE) + distances.length;
+    }
+
+    /**
+     * Writes the map's collision data onto a buffer, so the map can be rebuilt later without decoding the key bitmap
+     * nor building its indexes: the block type of each pixel, the solid bitset, the positions of the stars, the
+     * summed-area table, the column spans, the standing positions of each shape and the distance field.
+     * <p>
+     *     The longs come first and the bytes last, so every array is aligned on its size.
+     * </p>
+     *
+     * @param  data Buffer where the data is to be written (it must have getCacheSize() bytes remaining).
+     */
+    void writeCache(ByteBuffer data)
+    {
+        data.putInt(width);
+        data.putInt(height);
+        data.putInt(starPositions.length / 2);
+        data.putInt(0); //padding, so the words are aligned
+        data.asLongBuffer().put(key).put(solid);
+        data.position(data.position() + (key.length + solid.length) * (Long.SIZE / Byte.SIZE));
+
+        IntBuffer ints = data.asIntBuffer();
+        ints.put(starPositions);
+        ints.put(blockSums);
+        ints.put(spanStarts).put(spanTops).put(spanBottoms);
+        synchronized (spawnIndexes)
+        {
+            ints.put(spawnIndexes.size());
+            for(java.util.Map.Entry<CollisionShape,SpawnIndex> entry : spawnIndexes.entrySet())
+            {
+                int[] rects = entry.getKey().getRects();
+                ints.put(rects.length);
+                ints.put(rects);
+                entry.getValue().write(ints);
+            }
+        }
+        data.position(data.position() + ints.position() * (Integer.SIZE / Byte.SIZE));
+
+        data.put(distances);
+    }
 }
@@ -0,0 +1,204 @@
+package maverick.gleao.wormsworld.logic;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * MapCache.java - class used to store a map's decoded collision data on a file, so the map's key bitmap only has to be decoded once.
+ * <p>
+ *     The file is named after the key's resource id, a hash of its contents and the version of the file format, so
+ *     changing the key bitmap or the format invalidates it. It is read through a memory mapping (FileChannel.map), and
+ *     the map's arrays are copied straight from it.
+ * </p>
+ * <p>
+ *     Besides the packed key, the solid bitset and the stars' positions, the file stores the indexes built from them
+ *     (summed-area table, distance field and column spans) and the standing positions (SpawnIndex) of every collision
+ *     shape placed on the map when it was saved, so loading a map doesn't build anything. The standing positions are
+ *     stored with their shape's rectangles, so a shape that changes is simply indexed again.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+public class MapCache {
+    /**
+     * Number that identifies a map cache file.
+     */
+    private static final int magic = 0x574D4150;
+    /**
+     * Version of the file format (it must be incremented whenever the data written by Map.writeCache changes).
+     */
+    private static final int version = 3;
+    /**
+     * Size of the file's header (magic number, version and size of the data), in bytes.
+     */
+    private static final int headerSize = 3 * (Integer.SIZE / Byte.SIZE);
+    /**
+     * Prefix of the name of all the map cache files.
+     */
+    private static final String fileNamePrefix = "map_";
+
+    /**
+     * Directory that contains the cache files.
+     */
+    private File dir;
+    /**
+     * Resource id of the map's key bitmap.
+     */
+    private int resourceId;
+    /**
+     * File containing the map's collision data (null if the key's hash couldn't be computed).
+     */
+    private File file;
+    /**
+     * Memory mapping of the file's data (null if the file hasn't been opened).
+     */
+    private MappedByteBuffer data;
+
+    /**
+     * Basic constructor for the MapCache class.
+     *
+     * @param dir App-private directory where the cache files are stored.
+     * @param resourceId Resource id of the map's key bitmap.
+     * @param keyStream Stream with the contents of the key bitmap's resource, used to compute its hash (it is closed by this method).
+     */
+    public MapCache(File dir, int resourceId, InputStream keyStream)
+    {
+        this.dir = dir;
+        this.resourceId = resourceId;
+        try {
+            try {
+                CRC32 hash = new CRC32();
+                byte[] buffer = new byte[8192];
+                int n;
+                while((n = keyStream.read(buffer)) > 0)
+                {
+                    hash.update(buffer, 0, n);
+                }
+                this.file = new File(dir, fileNamePrefix + resourceId + "_" + Long.toHexString(hash.getValue()) + "_v" + version + ".bin");
+            } finally {
+                keyStream.close();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            this.file = null;
+        }
+    }
+
+    /**
+     * Opens the cache file, if it exists and is valid.
+     *
+     * @return Boolean that indicates if the map can be loaded from the cache (if false, the key bitmap must be decoded).
+     */
+    public boolean open()
+    {
+        if(file == null || !file.exists())
+        {
+            return false;
+        }
+        try {
+            MappedByteBuffer mapped;
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = input.getChannel();
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                input.close(); //the mapping remains valid after the channel is closed
+            }
+            mapped.order(ByteOrder.nativeOrder());
+            if(mapped.remaining() < headerSize || mapped.getInt() != magic || mapped.getInt() != version
+                    || mapped.getInt() != mapped.remaining())
+            {
+                return false;
+            }
+            this.data = mapped;
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Indicates if the cache file has been successfully opened.
+     *
+     * @return Boolean that indicates if the map can be loaded from the cache.
+     */
+    boolean isOpen()
+    {
+        return data != null;
+    }
+
+    /**
+     * Loads the map from the cache file (it must have been successfully opened).
+     *
+     * @param  map Image containing the map's graphics.
+     * @param  background Image containing the map's background graphics.
+     * @return The map, with the collision data read from the cache file.
+     */
+    Map load(MapImage map, MapImage background)
+    {
+        return new Map(map, data.duplicate().order(ByteOrder.nativeOrder()), background);
+    }
+
+    /**
+     * Saves the map's collision data onto the cache file, deleting the outdated cache files of the same key.
+     * <p>
+     *     The data is written onto a temporary file first, so an interrupted write never leaves a corrupted cache file.
+     * </p>
+     *
+     * @param  m Map to save.
+     */
+    void save(Map m)
+    {
+        if(file == null)
+        {
+            return;
+        }
+        try {
+            File[] outdated = dir.listFiles();
+            if(outdated != null)
+            {
+                for(File f : outdated)
+                {
+                    if(f.getName().startsWith(fileNamePrefix + resourceId + "_"))
+                    {
+                        f.delete();
+                    }
+                }
+            }
+
+            int size = m.getCacheSize();
+            ByteBuffer buffer = ByteBuffer.allocate(headerSize + size).order(ByteOrder.nativeOrder());
+            buffer.putInt(magic);
+            buffer.putInt(version);
+            buffer.putInt(size);
+            m.writeCache(buffer);
+            buffer.flip();
+
+            File tmp = new File(dir, file.getName() + ".tmp");
+            RandomAccessFile output = new RandomAccessFile(tmp, "rw");
+            try {
+                output.setLength(0);
+                FileChannel channel = output.getChannel();
+                while(buffer.hasRemaining())
+                {
+                    channel.write(buffer);
+                }
+            } finally {
+                output.close();
+            }
+            if(!tmp.renameTo(file))
+            {
+                tmp.delete();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * MapImage.java - class used to store one of the map's images (its graphics, background or key).
+ * <p>
+ *     The image is either kept whole, on a single bitmap (or array of colors), or split into square tiles that are only
+ *     decoded when needed.
+ *     In the latter case, only the most recently used tiles are kept in memory, so levels much larger than the
+ *     available memory can be played.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+public class MapImage {
+    /**
+     * Side of a tile (in pixels).
+     */
+    static final int tileSize = 256;
+    /**
+     * Default maximum number of tiles kept in memory.
+     */
+    private static final int defaultMaxTiles = 48;
+    /**
+     * Number of seconds the thread that prefetches the tiles is kept alive without any work.
+     */
+    private static final int loaderKeepAlive = 5;
+    /**
+     * Thread shared by all the images to decode the prefetched tiles, so the game's update never waits for a decode.
+     */
+    private static final ExecutorService tileLoader = createTileLoader();
+
+    /**
+     * Bitmap containing the whole image (null if the image is split into tiles or kept on an array of colors).
+     */
+    private Bitmap whole;
+    /**
+     * Colors of the image, row by row (null unless the image was built from an array of colors).
+     */
+    private int[] colors;
+    /**
+     * Decoder used to decode the tiles (null if the image is kept whole).
+     */
+    private BitmapRegionDecoder decoder;
+    /**
+     * Options used to decode the tiles.
+     */
+    private BitmapFactory.Options options;
+    /**
+     * Tiles currently in memory, indexed by their row and column, from the least to the most recently used.
+     */
+    private final LinkedHashMap<Long,Bitmap> tiles;
+    /**
+     * Maximum number of tiles kept in memory.
+     */
+    private int maxTiles;
+    /**
+     * Regions whose tiles are to be prefetched by the tile loader (null if there is no prefetch waiting to start).
+     */
+    private final AtomicReference<Rect[]> pendingAreas = new AtomicReference<Rect[]>();
+    /**
+     * Width of the image (in pixels).
+     */
+    private int width;
+    /**
+     * Height of the image (in pixels).
+     */
+    private int height;
+
+    /**
+     * Constructor for an image kept whole on a bitmap.
+     *
+     * @param whole Bitmap containing the image.
+     */
+    public MapImage(Bitmap whole)
+    {
+        this.whole = whole;
+        this.width = whole.getWidth();
+        this.height = whole.getHeight();
+        this.tiles = new LinkedHashMap<Long,Bitmap>(16, 0.75f, true);
+    }
+
+    /**
+     * Constructor for an image kept whole on an array of colors (it doesn't need any bitmap to be decoded, so it can be
+     * used to run a game without a display).
+     *
+     * @param width Width of the image (in pixels).
+     * @param height Height of the image (in pixels).
+     * @param colors Colors of the image, row by row.
+     */
+    public MapImage(int width, int height, int[] colors)
+    {
+        this.colors = colors;
+        this.width = width;
+        this.height = height;
+        this.tiles = new LinkedHashMap<Long,Bitmap>(16, 0.75f, true);
+    }
+
+    /**
+     * Constructor for an image split into tiles, which are decoded on demand.
+     *
+     * @param decoder Decoder of the image's file.
+     * @param options Options used to decode the tiles.
+     */
+    public MapImage(BitmapRegionDecoder decoder, BitmapFactory.Options options)
+    {
+        this.decoder = decoder;
+        this.options = options;
+        this.width = decoder.getWidth();
+        this.height = decoder.getHeight();
+        this.maxTiles = defaultMaxTiles;
+        this.tiles = new LinkedHashMap<Long,Bitmap>(2 * defaultMaxTiles, 0.75f, true);
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return Width of the image (in pixels).
+     */
+    int getWidth()
+    {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return Height of the image (in pixels).
+     */
+    int getHeight()
+    {
+        return height;
+    }
+
+    /**
+     * Indicates if the image is split into tiles.
+     *
+     * @return Boolean that indicates if the image is split into tiles.
+     */
+    boolean isTiled()
+    {
+        return decoder != null;
+    }
+
+    /**
+     * Creates the thread pool used to decode the prefetched tiles: a single low priority daemon thread, which stops
+     * when it has no work.
+     *
+     * @return The thread pool.
+     */
+    private static ExecutorService createTileLoader()
+    {
+        ThreadPoolExecutor loader = new ThreadPoolExecutor(1, 1, loaderKeepAlive, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r)
+            {
+                Thread thread = new Thread(r, "MapImageTileLoader");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        loader.allowCoreThreadTimeOut(true);
+        return loader;
+    }
+
+    /**
+     * Starts loading the tiles that intersect a group of rectangular regions of the image, on a background thread.
+     * <p>
+     *     The maximum number of tiles kept in memory grows, if needed, so that all of these tiles fit. If the previous
+     *     prefetch hasn't started yet, it is replaced by this one, so the loader never falls behind a moving camera.
+     * </p>
+     *
+     * @param  areas Regions of the image.
+     */
+    void prefetch(Rect... areas)
+    {
+        if(!isTiled())
+        {
+            return;
+        }
+        int needed = 0;
+        for(Rect area : areas)
+        {
+            needed += countTiles(area);
+        }
+        synchronized (tiles)
+        {
+            maxTiles = Math.max(defaultMaxTiles, needed);
+            evictTiles();
+        }
+        if(pendingAreas.getAndSet(areas) == null)
+        {
+            tileLoader.execute(new Runnable() {
+                @Override
+                public void run()
+                {
+                    Rect[] latest = pendingAreas.getAndSet(null);
+                    if(latest == null)
+                    {
+                        return;
+                    }
+                    try {
+                        for(Rect area : latest)
+                        {
+                            prefetchArea(area);
+                        }
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Counts the tiles that intersect a rectangular region of the image.
+     *
+     * @param  area Region of the image.
+     * @return Number of tiles that intersect the region.
+     */
+    private int countTiles(Rect area)
+    {
+        int left = Math.max(area.left, 0);
+        int top = Math.max(area.top, 0);
+        int right = Math.min(area.right, width - 1);
+        int bottom = Math.min(area.bottom, height - 1);
+        if(left > right || top > bottom)
+        {
+            return 0;
+        }
+        return (right / tileSize - left / tileSize + 1) * (bottom / tileSize - top / tileSize + 1);
+    }
+
+    /**
+     * Returns a bitmap with a rectangular region of the image.
+     *
+     * @param  x x coordinate of the region's upper left corner.
+     * @param  y y coordinate of the region's upper left corner.
+     * @param  regionWidth Width of the region.
+     * @param  regionHeight Height of the region.
+     * @param  mutable Boolean that indicates if the returned bitmap must be mutable.
+     * @return Bitmap with the region of the image.
+     */
+    Bitmap getRegion(int x, int y, int regionWidth, int regionHeight, boolean mutable)
+    {
+        if(whole != null)
+        {
+            Bitmap region = Bitmap.createBitmap(whole, x, y, regionWidth, regionHeight);
+            return (mutable ? region.copy(region.getConfig(), true) : region);
+        }
+        if(colors != null)
+        {
+            Bitmap region = Bitmap.createBitmap(colors, y * width + x, width, regionWidth, regionHeight, Bitmap.Config.ARGB_8888);
+            return (mutable ? region.copy(region.getConfig(), true) : region);
+        }
+
+        Bitmap region = Bitmap.createBitmap(regionWidth, regionHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(region);
+        for(int row = y / tileSize; row <= (y + regionHeight - 1) / tileSize; row++)
+        {
+            for(int column = x / tileSize; column <= (x + regionWidth - 1) / tileSize; column++)
+            {
+                Bitmap tile = getTile(column, row);
+                if(tile != null)
+                {
+                    canvas.drawBitmap(tile, column * tileSize - x, row * tileSize - y, null);
+                }
+            }
+        }
+        return region;
+    }
+
+    /**
+     * Reads the colors of a group of rows of the image.
+     *
+     * @param  pixels Array where the colors are written, row by row (it must be able to hold width * rows colors).
+     * @param  y First row to read.
+     * @param  rows Number of rows to read.
+     */
+    void getPixels(int[] pixels, int y, int rows)
+    {
+        if(whole != null)
+        {
+            whole.getPixels(pixels, 0, width, 0, y, width, rows);
+            return;
+        }
+        if(colors != null)
+        {
+            System.arraycopy(colors, y * width, pixels, 0, width * rows);
+            return;
+        }
+
+        //The rows are decoded directly, without going through the tiles (they are only read once)
+        Bitmap band = decoder.decodeRegion(new Rect(0, y, width, y + rows), options);
+        band.getPixels(pixels, 0, width, 0, 0, width, rows);
+        band.recycle();
+    }
+
+    /**
+     * Makes sure the tiles that intersect a rectangular region of the image are in memory.
+     *
+     * @param  area Region of the image.
+     */
+    private void prefetchArea(Rect area)
+    {
+        int left = Math.max(area.left, 0);
+        int top = Math.max(area.top, 0);
+        int right = Math.min(area.right, width - 1);
+        int bottom = Math.min(area.bottom, height - 1);
+        for(int row = top / tileSize; row <= bottom / tileSize; row++)
+        {
+            for(int column = left / tileSize; column <= right / tileSize; column++)
+            {
+                getTile(column, row);
+            }
+        }
+    }
+
+    /**
+     * Returns one of the image's tiles, decoding it if it isn't in memory.
+     *
+     * @param  column Column of the tile.
+     * @param  row Row of the tile.
+     * @return Bitmap containing the tile (null if the tile is outside the image).
+     */
+    private Bitmap getTile(int column, int row)
+    {
+        if(column < 0 || row < 0 || column * tileSize >= width || row * tileSize >= height)
+        {
+            return null;
+        }
+        Long index = ((long) row << 32) | column;
+        synchronized (tiles)
+        {
+            Bitmap tile = tiles.get(index);
+            if(tile != null)
+            {
+                return tile;
+            }
+        }
+
+        //Decode the tile outside the lock, so other tiles can still be read meanwhile
+        Rect bounds = new Rect(column * tileSize, row * tileSize,
+                Math.min((column + 1) * tileSize, width), Math.min((row + 1) * tileSize, height));
+        Bitmap tile = decoder.decodeRegion(bounds, options);
+        synchronized (tiles)
+        {
+            tiles.put(index, tile);
+            evictTiles();
+        }
+        return tile;
+    }
+
+    /**
+     * Removes the least recently used tiles from memory, until there are at most maxTiles tiles.
+     */
+    private void evictTiles()
+    {
+        Iterator<java.util.Map.Entry<Long,Bitmap>> it = tiles.entrySet().iterator();
+        while(tiles.size() > maxTiles && it.hasNext())
+        {
+            //The tile's bitmap isn't recycled, since it may still be drawn by another thread
+            it.next();
+            it.remove();
+        }
+    }
+}
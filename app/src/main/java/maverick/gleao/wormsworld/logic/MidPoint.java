@@ -7,10 +7,73 @@ import java.util.ArrayList;
  * <p>
  *     This class is vital for the collision detection.
  * </p>
+ * <p>
+ *     The pixels of a line only depend on the difference between its points, so the lines whose differences are
+ *     small (as are the bodies' displacements on each update) are computed once and then read from a table.
+ * </p>
  * @author  Gonçalo Leão
  * @author  José Gomes
  */
 public class MidPoint {
+    /**
+     * Interface for an object that receives, one by one, the pixels of a line computed by the midpoint algorithm.
+     */
+    public interface Visitor {
+        /**
+         * Receives one of the line's pixels.
+         *
+         * @param  x x coordinate of the pixel.
+         * @param  y y coordinate of the pixel.
+         * @return Boolean that indicates if the algorithm should go on to the next pixel (false stops it).
+         */
+        boolean visit(int x, int y);
+    }
+
+    /**
+     * Largest difference, along each axis, between the points of a line read from the table (bodies move at most a few pixels per update).
+     */
+    private static final int maxTableDelta = 8;
+    /**
+     * Number of different values, along each axis, of the differences covered by the table.
+     */
+    private static final int tableSide = 2 * maxTableDelta + 1;
+    /**
+     * Index, on tableOffsets, of the first pixel of each line of the table (the line with differences (dx,dy) is
+     * entry (dy + maxTableDelta) * tableSide + dx + maxTableDelta; it ends where the next entry starts).
+     */
+    private static final int[] tableStarts = new int[tableSide * tableSide + 1];
+    /**
+     * Pixels of every line of the table, relative to the line's initial point, stored as consecutive (x,y) pairs.
+     */
+    private static final int[] tableOffsets;
+
+    static
+    {
+        int size = 0;
+        for(int dy = -maxTableDelta; dy <= maxTableDelta; dy++)
+        {
+            for(int dx = -maxTableDelta; dx <= maxTableDelta; dx++)
+            {
+                size += 2 * countPoints(0,0,dx,dy);
+            }
+        }
+        tableOffsets = new int[size];
+        int[] points = new int[2 * (maxTableDelta + 1)];
+        int entry = 0;
+        int next = 0;
+        for(int dy = -maxTableDelta; dy <= maxTableDelta; dy++)
+        {
+            for(int dx = -maxTableDelta; dx <= maxTableDelta; dx++)
+            {
+                tableStarts[entry++] = next;
+                int count = rasterize(0,0,dx,dy,points);
+                System.arraycopy(points, 0, tableOffsets, next, 2 * count);
+                next += 2 * count;
+            }
+        }
+        tableStarts[entry] = next;
+    }
+
     /**
      * Applies the midpoint algorithm for the two points given as parameters.
      *
@@ -22,20 +85,166 @@ public class MidPoint {
      */
     static public ArrayList<Vec2<Integer> > apply(int xi, int yi, int xf, int yf)
     {
-        Vec2<Integer> Pi = new Vec2<Integer>(xi,yi);
-        Vec2<Integer> Pf = new Vec2<Integer>(xf,yf);
-        int octant = findOctant(xi,yi,xf,yf);
-        Pi = convertToFirstOctant(Pi,octant);
-        Pf = convertToFirstOctant(Pf,octant);
-        ArrayList<Vec2<Integer> > res = applyFirstOctant(Pi,Pf);
-        for(int i = 0; i < res.size(); i++)
+        int[] points = new int[2 * countPoints(xi,yi,xf,yf)];
+        int count = apply(xi,yi,xf,yf,points);
+        ArrayList<Vec2<Integer> > res = new ArrayList<Vec2<Integer> >(count);
+        for(int i = 0; i < count; i++)
         {
-            Vec2<Integer> point = res.get(i);
-            res.set(i,convertFromFirstOctant(point,octant));
+            res.add(new Vec2<Integer>(points[2 * i], points[2 * i + 1]));
         }
         return res;
     }
 
+    /**
+     * Applies the midpoint algorithm for the two points given as parameters, writing the pixels onto an array.
+     *
+     * @param xi x coordinate of the initial point.
+     * @param yi y coordinate of the initial point.
+     * @param xf x coordinate of the final point.
+     * @param yf y coordinate of the final point.
+     * @param points Array where the pixels are written, as consecutive (x,y) pairs (it must hold 2 * countPoints(xi,yi,xf,yf) integers).
+     * @return Number of pixels that form the line between the two points (it includes the delimiting points)
+     */
+    public static int apply(int xi, int yi, int xf, int yf, int[] points)
+    {
+        int entry = findTableEntry(xf - xi, yf - yi);
+        if(entry < 0)
+        {
+            return rasterize(xi,yi,xf,yf,points);
+        }
+        int start = tableStarts[entry];
+        int end = tableStarts[entry + 1];
+        for(int i = start; i < end; i += 2)
+        {
+            points[i - start] = xi + tableOffsets[i];
+            points[i - start + 1] = yi + tableOffsets[i + 1];
+        }
+        return (end - start) / 2;
+    }
+
+    /**
+     * Applies the midpoint algorithm for the two points given as parameters, handing each pixel to a visitor as soon as it is computed.
+     *
+     * @param xi x coordinate of the initial point.
+     * @param yi y coordinate of the initial point.
+     * @param xf x coordinate of the final point.
+     * @param yf y coordinate of the final point.
+     * @param visitor Visitor that receives the pixels, from the initial to the final point (both included).
+     * @return Boolean that indicates if all the pixels were visited (false if the visitor stopped the algorithm).
+     */
+    public static boolean apply(int xi, int yi, int xf, int yf, Visitor visitor)
+    {
+        int entry = findTableEntry(xf - xi, yf - yi);
+        if(entry >= 0)
+        {
+            for(int i = tableStarts[entry]; i < tableStarts[entry + 1]; i += 2)
+            {
+                if(!visitor.visit(xi + tableOffsets[i], yi + tableOffsets[i + 1]))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        int octant = findOctant(xi,yi,xf,yf);
+        int x = toFirstOctantX(xi,yi,octant);
+        int y = toFirstOctantY(xi,yi,octant);
+        int a = toFirstOctantX(xf,yf,octant) - x;
+        int b = toFirstOctantY(xf,yf,octant) - y;
+
+        int inc2 = 2*b; //increment to d to pick the Eastern point
+        int d = inc2 - a; //value used to decide if we'll draw E or NE
+        int inc1 = d - a; //increment to d to pick the North-Eastern point
+        for(int i = 0; i <= a; i++)
+        {
+            if(!visitor.visit(fromFirstOctantX(x,y,octant), fromFirstOctantY(x,y,octant)))
+            {
+                return false;
+            }
+            x += 1;
+            if (d >= 0)
+            {
+                y += 1;
+                d += inc1;
+            }
+            else
+            {
+                d += inc2;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Applies the midpoint algorithm for the two points given as parameters, writing the pixels onto an array, without using the table.
+     *
+     * @param xi x coordinate of the initial point.
+     * @param yi y coordinate of the initial point.
+     * @param xf x coordinate of the final point.
+     * @param yf y coordinate of the final point.
+     * @param points Array where the pixels are written, as consecutive (x,y) pairs (it must hold 2 * countPoints(xi,yi,xf,yf) integers).
+     * @return Number of pixels that form the line between the two points (it includes the delimiting points)
+     */
+    private static int rasterize(int xi, int yi, int xf, int yf, int[] points)
+    {
+        int octant = findOctant(xi,yi,xf,yf);
+        int x = toFirstOctantX(xi,yi,octant);
+        int y = toFirstOctantY(xi,yi,octant);
+        int a = toFirstOctantX(xf,yf,octant) - x;
+        int b = toFirstOctantY(xf,yf,octant) - y;
+
+        int inc2 = 2*b; //increment to d to pick the Eastern point
+        int d = inc2 - a; //value used to decide if we'll draw E or NE
+        int inc1 = d - a; //increment to d to pick the North-Eastern point
+        for(int i = 0; i <= a; i++)
+        {
+            points[2 * i] = fromFirstOctantX(x,y,octant);
+            points[2 * i + 1] = fromFirstOctantY(x,y,octant);
+            x += 1;
+            if (d >= 0)
+            {
+                y += 1;
+                d += inc1;
+            }
+            else
+            {
+                d += inc2;
+            }
+        }
+        return a + 1;
+    }
+
+    /**
+     * Finds the entry of the table that holds the pixels of a line.
+     *
+     * @param dx Difference between the x coordinates of the final and initial points.
+     * @param dy Difference between the y coordinates of the final and initial points.
+     * @return Index of the line's entry on tableStarts (-1 if the line is too long to be on the table).
+     */
+    private static int findTableEntry(int dx, int dy)
+    {
+        if(dx < -maxTableDelta || dx > maxTableDelta || dy < -maxTableDelta || dy > maxTableDelta)
+        {
+            return -1;
+        }
+        return (dy + maxTableDelta) * tableSide + dx + maxTableDelta;
+    }
+
+    /**
+     * Returns the number of pixels that form the line between two points.
+     *
+     * @param xi x coordinate of the initial point.
+     * @param yi y coordinate of the initial point.
+     * @param xf x coordinate of the final point.
+     * @param yf y coordinate of the final point.
+     * @return Number of pixels of the line (it includes the delimiting points)
+     */
+    public static int countPoints(int xi, int yi, int xf, int yf)
+    {
+        return Math.max(Math.abs(xf - xi), Math.abs(yf - yi)) + 1;
+    }
+
     /**
      * Applies the midpoint algorithm for the two points given as parameters, assuming they're on the first octant of the trigonometric circle (theta between 0º and 45º).
      * <p>
@@ -116,92 +325,106 @@ public class MidPoint {
     }
 
     /**
-     * Returns a point of a specified octant, which corresponds to a rotation of the given point belonging to the first octant.
+     * Returns the x coordinate of a point of the first octant, which corresponds to a rotation of the given point belonging to a given octant.
      *
-     * @param point Vector containing the coordinates of the point's to rotate.
-     * @param octant Octant where we want to place the point, by applying a rotation.
-     * @return Vector containing the coordinates of the point's after being rotated to the desired octant.
+     * @param x x coordinate of the point to rotate.
+     * @param y y coordinate of the point to rotate.
+     * @param octant Octant where the original point is.
+     * @return x coordinate of the point after being rotated to the first octant.
      */
-    private static Vec2<Integer> convertToFirstOctant(Vec2<Integer> point, int octant)
+    private static int toFirstOctantX(int x, int y, int octant)
     {
-        Vec2<Integer> newPoint = new Vec2<Integer>(point.getX(),point.getY());
         switch(octant)
         {
             case 2:
-                newPoint.setX(point.getY());
-                newPoint.setY(point.getX());
-                break;
             case 3:
-                newPoint.setX(point.getY());
-                newPoint.setY(-point.getX());
-                break;
+                return y;
             case 4:
-                newPoint.setX(-point.getX());
-                newPoint.setY(point.getY());
-                break;
             case 5:
-                newPoint.setX(-point.getX());
-                newPoint.setY(-point.getY());
-                break;
+                return -x;
             case 6:
-                newPoint.setX(-point.getY());
-                newPoint.setY(-point.getX());
-                break;
             case 7:
-                newPoint.setX(-point.getY());
-                newPoint.setY(point.getX());
-                break;
-            case 8:
-                newPoint.setX(point.getX());
-                newPoint.setY(-point.getY());
-                break;
+                return -y;
+            default:
+                return x;
+        }
+    }
 
+    /**
+     * Returns the y coordinate of a point of the first octant, which corresponds to a rotation of the given point belonging to a given octant.
+     *
+     * @param x x coordinate of the point to rotate.
+     * @param y y coordinate of the point to rotate.
+     * @param octant Octant where the original point is.
+     * @return y coordinate of the point after being rotated to the first octant.
+     */
+    private static int toFirstOctantY(int x, int y, int octant)
+    {
+        switch(octant)
+        {
+            case 2:
+            case 7:
+                return x;
+            case 3:
+            case 6:
+                return -x;
+            case 5:
+            case 8:
+                return -y;
+            default:
+                return y;
         }
-        return newPoint;
     }
 
     /**
-     * Returns a point of the first octant, which corresponds to a rotation of the given point belonging to a given octant.
+     * Returns the x coordinate of a point of a specified octant, which corresponds to a rotation of the given point belonging to the first octant.
      *
-     * @param point Vector containing the coordinates of the point's to rotate.
-     * @param octant Octant where the original point was.
-     * @return Vector containing the coordinates of the point's after being rotated to the first octant.
+     * @param x x coordinate of the point to rotate.
+     * @param y y coordinate of the point to rotate.
+     * @param octant Octant where we want to place the point, by applying a rotation.
+     * @return x coordinate of the point after being rotated to the desired octant.
      */
-    private static Vec2<Integer> convertFromFirstOctant(Vec2<Integer> point, int octant)
+    private static int fromFirstOctantX(int x, int y, int octant)
     {
-        Vec2<Integer> newPoint = new Vec2<Integer>(point.getX(),point.getY());
         switch(octant)
         {
             case 2:
-                newPoint.setX(point.getY());
-                newPoint.setY(point.getX());
-                break;
+            case 7:
+                return y;
             case 3:
-                newPoint.setX(-point.getY());
-                newPoint.setY(point.getX());
-                break;
+            case 6:
+                return -y;
             case 4:
-                newPoint.setX(-point.getX());
-                newPoint.setY(point.getY());
-                break;
             case 5:
-                newPoint.setX(-point.getX());
-                newPoint.setY(-point.getY());
-                break;
+                return -x;
+            default:
+                return x;
+        }
+    }
+
+    /**
+     * Returns the y coordinate of a point of a specified octant, which corresponds to a rotation of the given point belonging to the first octant.
+     *
+     * @param x x coordinate of the point to rotate.
+     * @param y y coordinate of the point to rotate.
+     * @param octant Octant where we want to place the point, by applying a rotation.
+     * @return y coordinate of the point after being rotated to the desired octant.
+     */
+    private static int fromFirstOctantY(int x, int y, int octant)
+    {
+        switch(octant)
+        {
+            case 2:
+            case 3:
+                return x;
             case 6:
-                newPoint.setX(-point.getY());
-                newPoint.setY(-point.getX());
-                break;
             case 7:
-                newPoint.setX(point.getY());
-                newPoint.setY(-point.getX());
-                break;
+                return -x;
+            case 5:
             case 8:
-                newPoint.setX(point.getX());
-                newPoint.setY(-point.getY());
-                break;
-
+                return -y;
+            default:
+                return y;
         }
-        return newPoint;
     }
 }
@@ -0,0 +1,177 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Bitmap;
+
+/**
+ * RenderSnapshot.java - class used to store everything needed to draw a frame of the game: the camera's rectangle and
+ * the position and animation frame of each visible sprite.
+ * <p>
+ *     A snapshot is filled by the thread that updates the game and then handed over to the thread that draws it,
+ *     which only reads it. This way, the drawing never sees a body halfway through an update. The snapshots are
+ *     reused, so their arrays only grow when more sprites come up.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+public final class RenderSnapshot {
+    /**
+     * x coordinate of the camera's upper left corner.
+     */
+    private int cameraX;
+    /**
+     * y coordinate of the camera's upper left corner.
+     */
+    private int cameraY;
+    /**
+     * Width of the camera's rectangle.
+     */
+    private int cameraWidth;
+    /**
+     * Height of the camera's rectangle.
+     */
+    private int cameraHeight;
+
+    /**
+     * Animation of each sprite.
+     */
+    private Animation[] animations = new Animation[64];
+    /**
+     * Frame of each sprite.
+     */
+    private int[] frames = new int[64];
+    /**
+     * x coordinate of each sprite's upper left corner on the map.
+     */
+    private int[] xs = new int[64];
+    /**
+     * y coordinate of each sprite's upper left corner on the map.
+     */
+    private int[] ys = new int[64];
+    /**
+     * Number of sprites.
+     */
+    private int count;
+
+    /**
+     * Basic constructor for the RenderSnapshot class (snapshots are only created by the game).
+     */
+    RenderSnapshot()
+    {
+    }
+
+    /**
+     * Empties the snapshot and stores the camera's rectangle.
+     *
+     * @param  cam The camera.
+     */
+    void reset(Camera cam)
+    {
+        this.cameraX = cam.getX();
+        this.cameraY = cam.getY();
+        this.cameraWidth = cam.getWidth();
+        this.cameraHeight = cam.getHeight();
+        for(int i = 0; i < count; i++)
+        {
+            animations[i] = null;
+        }
+        this.count = 0;
+    }
+
+    /**
+     * Adds a sprite to the snapshot (sprites are drawn in the order they are added).
+     *
+     * @param  animation The sprite's animation.
+     * @param  frame Index of the frame to draw.
+     * @param  x x coordinate of the sprite's upper left corner on the map.
+     * @param  y y coordinate of the sprite's upper left corner on the map.
+     */
+    void addSprite(Animation animation, int frame, int x, int y)
+    {
+        if(animation == null)
+        {
+            return;
+        }
+        if(count == animations.length)
+        {
+            grow();
+        }
+        animations[count] = animation;
+        frames[count] = frame;
+        xs[count] = x;
+        ys[count] = y;
+        count++;
+    }
+
+    /**
+     * Draws every sprite of the snapshot on top of the given bitmap.
+     *
+     * @param  gameMap Bitmap that contains the camera's view of the map, where the sprites will be drawn.
+     */
+    void draw(Bitmap gameMap)
+    {
+        for(int i = 0; i < count; i++)
+        {
+            animations[i].drawSprite(gameMap, xs[i], ys[i], frames[i], cameraX, cameraY, cameraWidth, cameraHeight);
+        }
+    }
+
+    /**
+     * Returns the x coordinate of the camera's upper left corner.
+     *
+     * @return x coordinate of the camera.
+     */
+    int getCameraX()
+    {
+        return cameraX;
+    }
+
+    /**
+     * Returns the y coordinate of the camera's upper left corner.
+     *
+     * @return y coordinate of the camera.
+     */
+    int getCameraY()
+    {
+        return cameraY;
+    }
+
+    /**
+     * Returns the width of the camera's rectangle.
+     *
+     * @return Width of the camera.
+     */
+    int getCameraWidth()
+    {
+        return cameraWidth;
+    }
+
+    /**
+     * Returns the height of the camera's rectangle.
+     *
+     * @return Height of the camera.
+     */
+    int getCameraHeight()
+    {
+        return cameraHeight;
+    }
+
+    /**
+     * Doubles the capacity of the sprite arrays.
+     */
+    private void grow()
+    {
+        int capacity = 2 * animations.length;
+        Animation[] newAnimations = new Animation[capacity];
+        int[] newFrames = new int[capacity];
+        int[] newXs = new int[capacity];
+        int[] newYs = new int[capacity];
+        System.arraycopy(animations, 0, newAnimations, 0, count);
+        System.arraycopy(frames, 0, newFrames, 0, count);
+        System.arraycopy(xs, 0, newXs, 0, count);
+        System.arraycopy(ys, 0, newYs, 0, count);
+        animations = newAnimations;
+        frames = newFrames;
+        xs = newXs;
+        ys = newYs;
+    }
+}
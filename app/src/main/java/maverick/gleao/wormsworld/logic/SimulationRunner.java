@@ -0,0 +1,364 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Color;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * SimulationRunner.java - class used to run a game without a display, as fast as possible.
+ * <p>
+ *     The game is advanced one physics step at a time, with scripted or random input, until it ends or a number of steps
+ *     is reached. Nothing is drawn and no Android resource is decoded (the sprites don't need to be loaded and the map can
+ *     be built from an array of colors), so it can run many games in a row on any Java virtual machine, to measure the
+ *     simulation's throughput or to check that changes to the physics don't alter the games' outcomes.
+ * </p>
+ * <p>
+ *     The camera is shared by every game, so the games must be run one at a time.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+public class SimulationRunner {
+    /**
+     * Provides the input of a game run by the runner.
+     */
+    public interface Input
+    {
+        /**
+         * Called before each physics step, to press or release the game's buttons.
+         *
+         * @param  game The game.
+         * @param  tick Index of the physics step about to be done (starting at 0).
+         */
+        void beforeTick(Game game, int tick);
+    }
+
+    /**
+     * Result of a game run by the runner.
+     */
+    public static class Result
+    {
+        /**
+         * Number of physics steps done.
+         */
+        private final int ticks;
+        /**
+         * Time (in nanoseconds) spent on the physics steps.
+         */
+        private final long nanos;
+        /**
+         * Event that ended the game (null if it didn't end).
+         */
+        private final Game.GameEvent outcome;
+        /**
+         * Coin score at the end of the run.
+         */
+        private final int score;
+        /**
+         * Hash of the positions of the game's bodies after each physics step.
+         */
+        private final long[] positionHashes;
+
+        /**
+         * Basic constructor for the Result class.
+         *
+         * @param  ticks Number of physics steps done.
+         * @param  nanos Time (in nanoseconds) spent on the physics steps.
+         * @param  outcome Event that ended the game (null if it didn't end).
+         * @param  score Coin score at the end of the run.
+         * @param  positionHashes Hash of the positions of the game's bodies after each physics step.
+         */
+        Result(int ticks, long nanos, Game.GameEvent outcome, int score, long[] positionHashes)
+        {
+            this.ticks = ticks;
+            this.nanos = nanos;
+            this.outcome = outcome;
+            this.score = score;
+            this.positionHashes = positionHashes;
+        }
+
+        /**
+         * Returns the number of physics steps done.
+         *
+         * @return Number of physics steps.
+         */
+        public int getTicks()
+        {
+            return ticks;
+        }
+
+        /**
+         * Returns the time spent on the physics steps.
+         *
+         * @return Time (in nanoseconds).
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+
+        /**
+         * Returns the event that ended the game.
+         *
+         * @return Event that ended the game (null if it didn't end).
+         */
+        public Game.GameEvent getOutcome()
+        {
+            return outcome;
+        }
+
+        /**
+         * Returns the coin score at the end of the run.
+         *
+         * @return Coin score.
+         */
+        public int getScore()
+        {
+            return score;
+        }
+
+        /**
+         * Returns the hashes of the positions of the game's bodies, one per physics step.
+         * <p>
+         *     Two runs of a deterministic game with the same input must have the same hashes, step by step.
+         * </p>
+         *
+         * @return Hash of the positions after each physics step.
+         */
+        public long[] getPositionHashes()
+        {
+            return positionHashes;
+        }
+
+        /**
+         * Returns the simulation's throughput.
+         *
+         * @return Number of physics steps done per second of real time.
+         */
+        public double getTicksPerSecond()
+        {
+            return (nanos == 0 ? 0 : ticks * 1e9 / nanos);
+        }
+
+        @Override
+        public String toString()
+        {
+            return ticks + " ticks, " + Math.round(getTicksPerSecond()) + " ticks/s, outcome " + outcome + ", score " + score;
+        }
+    }
+
+    /**
+     * Game being run.
+     */
+    private final Game game;
+    /**
+     * Input of the game.
+     */
+    private final Input input;
+    /**
+     * Event that ended the game (null while it hasn't ended).
+     */
+    private Game.GameEvent outcome;
+
+    /**
+     * Basic constructor for the SimulationRunner class.
+     *
+     * @param  game Game to run.
+     * @param  input Input of the game (null for no input).
+     */
+    public SimulationRunner(Game game, Input input)
+    {
+        this.game = game;
+        this.input = input;
+    }
+
+    /**
+     * Runs the game until it ends or a number of physics steps is done.
+     *
+     * @param  maxTicks Maximum number of physics steps.
+     * @return Result of the run.
+     */
+    public Result run(int maxTicks)
+    {
+        GameEventQueue.Listener listener = new GameEventQueue.Listener() {
+            @Override
+            public void onGameEvent(Game.GameEvent event)
+            {
+                if(event != Game.GameEvent.SCORE_UPDATE)
+                {
+                    outcome = event;
+                }
+            }
+        };
+
+        int ticks = 0;
+        long[] positionHashes = new long[Math.min(maxTicks, 1024)];
+        long start = System.nanoTime();
+        while(ticks < maxTicks && outcome == null)
+        {
+            if(input != null)
+            {
+                input.beforeTick(game, ticks);
+            }
+            game.update(Game.physicsStep);
+            game.drainEvents(listener);
+            if(ticks == positionHashes.length)
+            {
+                positionHashes = Arrays.copyOf(positionHashes, Math.min(maxTicks, 2 * ticks));
+            }
+            positionHashes[ticks] = game.hashPositions();
+            ticks++;
+        }
+        long nanos = System.nanoTime() - start;
+        return new Result(ticks, nanos, outcome, game.getScore(), Arrays.copyOf(positionHashes, ticks));
+    }
+
+    /**
+     * Returns an input that presses and releases the game's buttons at random.
+     *
+     * @param  seed Seed of the input's random number generator (the same seed always gives the same input).
+     * @return The input.
+     */
+    public static Input randomInput(long seed)
+    {
+        final Random rand = new Random(seed);
+        return new Input() {
+            @Override
+            public void beforeTick(Game game, int tick)
+            {
+                switch(rand.nextInt(10))
+                {
+                    case 0:
+                        game.setArrowBtnState(true, rand.nextBoolean());
+                        break;
+                    case 1:
+                        game.setArrowBtnState(false, rand.nextBoolean());
+                        break;
+                    case 2:
+                        game.jump();
+                        break;
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates a deterministic game on a map built from an array of colors, using the map's colors for the key and graphics.
+     *
+     * @param  width Width of the map (in pixels).
+     * @param  height Height of the map (in pixels).
+     * @param  keyColors Block type of each pixel, using the key's color coding, row by row.
+     * @param  level Level played on the map.
+     * @param  seed Seed of the game's random number generator.
+     * @return The game.
+     */
+    public static Game createGame(int width, int height, int[] keyColors, Game.Level level, long seed)
+    {
+        MapImage key = new MapImage(width, height, keyColors);
+        return new Game(key, key, null, level, null, seed);
+    }
+
+    /**
+     * Creates a deterministic game on a randomly generated map: a solid floor with platforms (some of them slippery)
+     * and star blocks above it.
+     *
+     * @param  width Width of the map (in pixels).
+     * @param  height Height of the map (in pixels).
+     * @param  level Level played on the map.
+     * @param  seed Seed used to generate the map and of the game's random number generator.
+     * @return The game.
+     */
+    public static Game createSyntheticGame(int width, int height, Game.Level level, long seed)
+    {
+        return createGame(width, height, createSyntheticKey(width, height, new Random(seed)), level, seed);
+    }
+
+    /**
+     * Generates the key of a random map.
+     *
+     * @param  width Width of the map (in pixels).
+     * @param  height Height of the map (in pixels).
+     * @param  rand Random number generator.
+     * @return Block type of each pixel, using the key's color coding, row by row.
+     */
+    static int[] createSyntheticKey(int width, int height, Random rand)
+    {
+        int[] key = new int[width * height];
+        Arrays.fill(key, Color.WHITE);
+        //Floor
+        int floorTop = height - Math.max(1, height / 10);
+        fillRect(key, width, 0, floorTop, width, height - floorTop, Color.BLACK);
+        //Platforms
+        int platforms = Math.max(1, width * height / 20000);
+        for(int i = 0; i < platforms; i++)
+        {
+            int platformWidth = 20 + rand.nextInt(Math.max(1, width / 4));
+            int platformHeight = 4 + rand.nextInt(8);
+            int x = rand.nextInt(width);
+            int y = rand.nextInt(Math.max(1, floorTop - platformHeight));
+            int color = (rand.nextInt(4) == 0 ? Color.CYAN : Color.BLACK);
+            fillRect(key, width, x, y, platformWidth, platformHeight, color);
+        }
+        //Stars
+        int stars = 1 + platforms / 4;
+        for(int i = 0; i < stars; i++)
+        {
+            int x = rand.nextInt(width);
+            int y = rand.nextInt(Math.max(1, floorTop - 20));
+            fillRect(key, width, x, y, 4, 4, Color.MAGENTA);
+        }
+        return key;
+    }
+
+    /**
+     * Fills a rectangle of a key with a color (the parts outside the key are ignored).
+     *
+     * @param  key Block type of each pixel, row by row.
+     * @param  width Width of the key (in pixels).
+     * @param  x x coordinate of the rectangle's upper left corner.
+     * @param  y y coordinate of the rectangle's upper left corner.
+     * @param  rectWidth Width of the rectangle.
+     * @param  rectHeight Height of the rectangle.
+     * @param  color Color of the rectangle.
+     */
+    private static void fillRect(int[] key, int width, int x, int y, int rectWidth, int rectHeight, int color)
+    {
+        int height = key.length / width;
+        for(int row = Math.max(y, 0); row < Math.min(y + rectHeight, height); row++)
+        {
+            for(int column = Math.max(x, 0); column < Math.min(x + rectWidth, width); column++)
+            {
+                key[row * width + column] = color;
+            }
+        }
+    }
+
+    /**
+     * Runs a number of games on randomly generated maps, with random input, and prints their results.
+     *
+     * @param  args Number of games, maximum number of physics steps per game, map width, map height and collision mode
+     *              ("stepped" or "swept") (all optional).
+     */
+    public static void main(String[] args)
+    {
+        int games = (args.length > 0 ? Integer.parseInt(args[0]) : 100);
+        int maxTicks = (args.length > 1 ? Integer.parseInt(args[1]) : 10000);
+        int width = (args.length > 2 ? Integer.parseInt(args[2]) : 800);
+        int height = (args.length > 3 ? Integer.parseInt(args[3]) : 600);
+        Game.CollisionMode collisionMode = (args.length > 4 ? Game.CollisionMode.valueOf(args[4].toUpperCase()) : Game.CollisionMode.STEPPED);
+
+        long totalTicks = 0;
+        long totalNanos = 0;
+        for(int i = 0; i < games; i++)
+        {
+            Game game = createSyntheticGame(width, height, Game.Level.SNOWMAN, i);
+            game.setCollisionMode(collisionMode);
+            Result result = new SimulationRunner(game, randomInput(i)).run(maxTicks);
+            System.out.println("game " + i + ": " + result);
+            totalTicks += result.getTicks();
+            totalNanos += result.getNanos();
+        }
+        System.out.println(games + " games, " + totalTicks + " ticks, " + Math.round(totalTicks * 1e9 / Math.max(1, totalNanos)) + " ticks/s");
+    }
+}
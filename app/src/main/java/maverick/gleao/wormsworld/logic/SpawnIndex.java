@@ -0,0 +1,174 @@
+package maverick.gleao.wormsworld.logic;
+
+import java.nio.IntBuffer;
+
+/**
+ * SpawnIndex.java - class used to store every position where a body with a given collision shape can stand on the map.
+ * <p>
+ *     A body can be placed where it doesn't collide with the map and where it would collide if it moved one pixel down.
+ *     These positions are found once, column by column (so they are sorted by column), and saved on the map's cache
+ *     file. They never change: the ones taken by the bodies already placed are tracked by a SpawnSession, so placing a
+ *     body only needs to draw one of the positions left, instead of trying random pixels until one of them is valid.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+class SpawnIndex {
+    /**
+     * Standing positions, stored as consecutive (x,y) pairs.
+     */
+    private int[] candidates;
+    /**
+     * Number of standing positions.
+     */
+    private int count;
+
+    /**
+     * Basic constructor for the SpawnIndex class, which finds every standing position of a shape on the map.
+     *
+     * @param  map The game's map.
+     * @param  shape The bodies' collision shape.
+     */
+    SpawnIndex(Map map, CollisionShape shape)
+    {
+        this.candidates = new int[64];
+        this.count = 0;
+        if(shape.isEmpty())
+        {
+            //An empty shape never touches the ground
+            return;
+        }
+        int width = map.getMapWidth();
+        int height = map.getMapHeight();
+        for(int x = 0; x < width; x++)
+        {
+            int y = shape.findFreeRow(map, x, 0);
+            while(y < height)
+            {
+                int drop = shape.getDropDistance(map, x, y);
+                if(drop < 0)
+                {
+                    //The rows were skipped using the column spans, so this shouldn't happen
+                    y = shape.findFreeRow(map, x, y + 1);
+                    continue;
+                }
+                if(drop == Integer.MAX_VALUE || y + drop >= height)
+                {
+                    break;
+                }
+                addCandidate(x, y + drop);
+                y = shape.findFreeRow(map, x, y + drop + 1);
+            }
+        }
+    }
+
+    /**
+     * Constructor for the SpawnIndex class that reads the standing positions previously stored with write (usually on
+     * a MapCache file).
+     *
+     * @param  data Buffer containing the number of positions followed by their coordinates, as written by write.
+     */
+    SpawnIndex(IntBuffer data)
+    {
+        this.count = data.get();
+        this.candidates = new int[2 * count];
+        data.get(candidates);
+    }
+
+    /**
+     * Returns the number of integers written by write.
+     *
+     * @return Number of integers needed to store the index.
+     */
+    int getDataSize()
+    {
+        return 1 + 2 * count;
+    }
+
+    /**
+     * Writes the number of standing positions and their coordinates onto a buffer.
+     *
+     * @param  data Buffer where the positions are to be written (it must have getDataSize() integers remaining).
+     */
+    void write(IntBuffer data)
+    {
+        data.put(count);
+        data.put(candidates, 0, 2 * count);
+    }
+
+    /**
+     * Adds a standing position to the index.
+     *
+     * @param  x x coordinate of the body.
+     * @param  y y coordinate of the body.
+     */
+    private void addCandidate(int x, int y)
+    {
+        if(2 * count == candidates.length)
+        {
+            int[] grown = new int[2 * candidates.length];
+            System.arraycopy(candidates, 0, grown, 0, candidates.length);
+            candidates = grown;
+        }
+        candidates[2 * count] = x;
+        candidates[2 * count + 1] = y;
+        count++;
+    }
+
+    /**
+     * Returns the number of standing positions.
+     *
+     * @return Number of standing positions on the index.
+     */
+    int size()
+    {
+        return count;
+    }
+
+    /**
+     * Returns the x coordinate of one of the standing positions.
+     *
+     * @param  i Index of the position (positions are sorted by column, and then by row).
+     * @return x coordinate of the body.
+     */
+    int getX(int i)
+    {
+        return candidates[2 * i];
+    }
+
+    /**
+     * Returns the y coordinate of one of the standing positions.
+     *
+     * @param  i Index of the position (positions are sorted by column, and then by row).
+     * @return y coordinate of the body.
+     */
+    int getY(int i)
+    {
+        return candidates[2 * i + 1];
+    }
+
+    /**
+     * Finds the first standing position at or to the right of a column, with a binary search.
+     *
+     * @param  x x coordinate of the column.
+     * @return Index of the first position whose x coordinate is at least x (size() if there is none).
+     */
+    int findColumn(int x)
+    {
+        int low = 0;
+        int high = count;
+        while(low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if(candidates[2 * middle] < x)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,205 @@
+package maverick.gleao.wormsworld.logic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * SpawnSession.java - class used to place bodies on the map, one after the other, without overlapping each other.
+ * <p>
+ *     For each collision shape, the session keeps the standing positions of the shape's SpawnIndex split into two parts:
+ *     the ones still free come first, and the ones taken by the bodies already placed come after them. When a body is
+ *     added, the positions whose footprint overlaps it are swapped to the taken part, so drawing a free position only
+ *     takes one random number and no collision test.
+ * </p>
+ * @author  Gonçalo Leão
+ * @author  José Gomes
+ */
+class SpawnSession {
+    /**
+     * Standing positions of a shape, split into the free and the taken ones.
+     */
+    private static class Partition {
+        /**
+         * Shape whose standing positions are stored.
+         */
+        final CollisionShape shape;
+        /**
+         * Every standing position of the shape.
+         */
+        final SpawnIndex index;
+        /**
+         * Indexes of the standing positions, the free ones first.
+         */
+        final int[] order;
+        /**
+         * Position of each standing position on the order array.
+         */
+        final int[] positions;
+        /**
+         * Number of free standing positions.
+         */
+        int live;
+
+        /**
+         * Basic constructor for the Partition class, where every standing position is free.
+         *
+         * @param  shape The bodies' collision shape.
+         * @param  index Standing positions of the shape.
+         */
+        Partition(CollisionShape shape, SpawnIndex index)
+        {
+            this.shape = shape;
+            this.index = index;
+            this.live = index.size();
+            this.order = new int[live];
+            this.positions = new int[live];
+            for(int i = 0; i < live; i++)
+            {
+                order[i] = i;
+                positions[i] = i;
+            }
+        }
+
+        /**
+         * Marks as taken every standing position where the shape would overlap a body.
+         *
+         * @param  body The body placed on the map.
+         */
+        void remove(Body body)
+        {
+            CollisionShape other = body.getCollisionShape();
+            if(other.isEmpty() || shape.isEmpty())
+            {
+                return;
+            }
+            int bodyX = body.getRoundedX();
+            int bodyY = body.getRoundedY();
+            //Range of positions where the bounding boxes may overlap
+            int minX = bodyX + other.getLeft() - shape.getRight();
+            int maxX = bodyX + other.getRight() - shape.getLeft();
+            int minY = bodyY + other.getTop() - shape.getBottom();
+            int maxY = bodyY + other.getBottom() - shape.getTop();
+            //The positions are sorted by column, so only the ones between minX and maxX are read
+            for(int i = index.findColumn(minX); i < index.size(); i++)
+            {
+                int x = index.getX(i);
+                if(x > maxX)
+                {
+                    break;
+                }
+                int y = index.getY(i);
+                if(positions[i] < live && y >= minY && y <= maxY && shape.intersects(x, y, other, bodyX, bodyY))
+                {
+                    take(i);
+                }
+            }
+        }
+
+        /**
+         * Swaps a free standing position with the last free one, moving it to the taken part.
+         *
+         * @param  i Index of the standing position.
+         */
+        private void take(int i)
+        {
+            live--;
+            int last = order[live];
+            int position = positions[i];
+            order[position] = last;
+            positions[last] = position;
+            order[live] = i;
+            positions[i] = live;
+        }
+    }
+
+    /**
+     * The game's map.
+     */
+    private Map map;
+    /**
+     * Bodies placed during the session.
+     */
+    private ArrayList<Body> bodies;
+    /**
+     * Standing positions of each of the shapes drawn during the session.
+     */
+    private HashMap<CollisionShape,Partition> partitions;
+
+    /**
+     * Basic constructor for the SpawnSession class, for a map without any bodies.
+     *
+     * @param  map The game's map.
+     */
+    SpawnSession(Map map)
+    {
+        this.map = map;
+        this.bodies = new ArrayList<Body>();
+        this.partitions = new HashMap<CollisionShape,Partition>();
+    }
+
+    /**
+     * Returns the map where the bodies are placed.
+     *
+     * @return The game's map.
+     */
+    Map getMap()
+    {
+        return map;
+    }
+
+    /**
+     * Returns the bodies placed during the session.
+     *
+     * @return Bodies added to the session.
+     */
+    ArrayList<Body> getBodies()
+    {
+        return bodies;
+    }
+
+    /**
+     * Moves a body to one of the standing positions of its collision shape that don't overlap the bodies placed during
+     * the session, with every free position being equally likely. The body isn't added to the session.
+     *
+     * @param  b The body to place.
+     * @param  rand Random number generator used to choose the body's position.
+     * @return Boolean that indicates if there was a free standing position for the body.
+     */
+    boolean draw(Body b, Random rand)
+    {
+        CollisionShape shape = b.getCollisionShape();
+        Partition partition = partitions.get(shape);
+        if(partition == null)
+        {
+            partition = new Partition(shape, map.getSpawnIndex(shape));
+            for(int i = 0; i < bodies.size(); i++)
+            {
+                partition.remove(bodies.get(i));
+            }
+            partitions.put(shape, partition);
+        }
+        if(partition.live == 0)
+        {
+            return false;
+        }
+        int i = partition.order[rand.nextInt(partition.live)];
+        b.setX(partition.index.getX(i));
+        b.setY(partition.index.getY(i));
+        return true;
+    }
+
+    /**
+     * Adds a body, on its current position, to the session, so the bodies placed after it don't overlap it.
+     *
+     * @param  b The body placed on the map.
+     */
+    void add(Body b)
+    {
+        bodies.add(b);
+        for(Partition partition : partitions.values())
+        {
+            partition.remove(b);
+        }
+    }
+}
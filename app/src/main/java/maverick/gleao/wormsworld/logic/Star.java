@@ -1,9 +1,6 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
-import android.graphics.Rect;
-
-import java.util.ArrayList;
 
 /**
  * Star.java - class used to represent a star.
@@ -54,6 +51,10 @@ public class Star extends Body {
      * Height of the first collision rectangle.
      */
     private static final int rectAHeight = 21;
+    /**
+     * Collision shape shared by all the stars.
+     */
+    private static final CollisionShape shape = new CollisionShape(rectAX, rectAY, rectAWidth, rectAHeight);
 
     /**
      * Star's maximum x velocity.
@@ -89,6 +90,21 @@ public class Star extends Body {
         initAnimation();
     }
 
+    /**
+     * Constructor for a star whose state is kept on a store shared with the other stars.
+     *
+     * @param  store Store shared by the stars.
+     * @param  x Initial x coordinate of the star on the map.
+     * @param  y Initial y coordinate of the star on the map.
+     */
+    Star(BodyStore store, double x, double y)
+    {
+        super(store,x,y,starMaxVx,starMaxVy,starXAten,starGravity,false);
+        this.visible = true;
+        this.timeInvisible = 0;
+        initAnimation();
+    }
+
     /**
      * Draws the star on top of the given bitmap, in the appropriate position.
      *
@@ -103,37 +119,37 @@ public class Star extends Body {
     }
 
     /**
-     * Returns an array with the body's collision rectangles.
+     * Adds the star's sprite to a render snapshot (invisible stars aren't added).
      *
-     * @return Array containing the body's collision rectangles.
+     * @param  snapshot Snapshot where the sprite is added.
+     * @param  alpha Fraction of the way from the previous to the current position.
      */
-    protected ArrayList<Rect> getCollisionRectangles()
+    void addSprite(RenderSnapshot snapshot, double alpha)
     {
-        ArrayList<Rect> rects = new ArrayList<Rect>();
-
-        int x = (int) Math.round(getX());
-        int y = (int) Math.round(getY());
-
-        int xA = x + rectAX;
-        int yA = y + rectAY;
-        Rect A = new Rect(xA, yA, xA + rectAWidth - 1, yA + rectAHeight - 1);
-        rects.add(A);
+        if(visible)
+        {
+            super.addSprite(snapshot, alpha);
+        }
+    }
 
-        return rects;
+    /**
+     * Returns the way the body moves.
+     *
+     * @return The body's type (stars never move after being placed).
+     */
+    protected BodyType getBodyType()
+    {
+        return BodyType.STATIC;
     }
 
     /**
-     * Updates the body's animation.
+     * Returns the body's collision shape, relative to its position.
      *
-     * @param  deltaT Time (in millis) since the last update.
+     * @return The body's collision shape.
      */
-    void updateAnim(long deltaT)
+    protected CollisionShape getCollisionShape()
     {
-        //Update the star's animation
-        if(visible)
-        {
-            super.updateAnim(deltaT);
-        }
+        return shape;
     }
 
     /**
@@ -153,6 +169,7 @@ public class Star extends Body {
             {
                 timeInvisible = 0;
                 visible = true;
+                setAnimated(true);
             }
         }
     }
@@ -167,6 +184,7 @@ public class Star extends Body {
         if(visible)
         {
             this.visible = false;
+            setAnimated(false);
             return true;
         }
         return false;
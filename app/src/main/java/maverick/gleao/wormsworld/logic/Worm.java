@@ -1,9 +1,6 @@
 package maverick.gleao.wormsworld.logic;
 
 import android.graphics.Bitmap;
-import android.graphics.Rect;
-
-import java.util.ArrayList;
 
 /**
  * Worm.java - class used to represent a worm.
@@ -32,6 +29,11 @@ public class Worm extends Body {
      * Frame time for all the worms' animations.
      */
     private static final int frameTime = 200;
+    /**
+     * Width of a frame of the worms' sprite sheets (immobile.png has 2 frames of 20x20 pixels), used to mirror the
+     * collision shape when the sprites aren't loaded.
+     */
+    static final int frameWidth = 20;
 
     //Rectangles that make up a worm
     /**
@@ -84,6 +86,19 @@ public class Worm extends Body {
      * Height of the third collision rectangle.
      */
     private static final int rectCHeight = 6;
+    /**
+     * Collision shape shared by all the worms, when facing the left.
+     */
+    private static final CollisionShape shape = new CollisionShape(rectAX, rectAY, rectAWidth, rectAHeight,
+            rectBX, rectBY, rectBWidth, rectBHeight, rectCX, rectCY, rectCWidth, rectCHeight);
+    /**
+     * Collision shape of the worm when facing the right (built on demand, from the width of its sprite).
+     */
+    private CollisionShape rightShape;
+    /**
+     * Sprite width used to build rightShape.
+     */
+    private int rightShapeWidth;
 
     /**
      * Worm's maximum x velocity.
@@ -119,41 +134,29 @@ public class Worm extends Body {
     }
 
     /**
-     * Returns an array with the body's collision rectangles.
+     * Returns the body's collision shape, relative to its position.
      *
-     * @return Array containing the body's collision rectangles.
+     * @return The body's collision shape, mirrored if the worm is facing the right.
      */
-    protected ArrayList<Rect> getCollisionRectangles()
+    protected CollisionShape getCollisionShape()
     {
-        ArrayList<Rect> rects = new ArrayList<Rect>();
-
-        int x = (int) Math.round(getX());
-        int y = (int) Math.round(getY());
-
+        if(!facingRight)
+        {
+            return shape;
+        }
+        //The mirrored shape depends on the sprite's width, so it is only rebuilt if the width changes
         int spriteWidth = getSpriteWidth();
-
-        int xA = x + rectAX;
-        int yA = y + rectAY;
-        int xB = x + rectBX;
-        int yB = y + rectBY;
-        int xC = x + rectCX;
-        int yC = y + rectCY;
-        if(facingRight)
+        if(spriteWidth == 0)
         {
-            xA = x + spriteWidth - rectAX - rectAWidth; //spriteWidth - (rectAX + rectAWidth - 1) - 1
-            xB = x + spriteWidth - rectBX - rectBWidth;
-            xC = x + spriteWidth - rectCX - rectCWidth;
+            //Without a sprite (when running headless), the shape is mirrored as it would be on the device
+            spriteWidth = frameWidth;
         }
-        Rect A = new Rect(xA, yA, xA + rectAWidth - 1, yA + rectAHeight - 1);
-        rects.add(A);
-
-        Rect B = new Rect(xB, yB, xB + rectBWidth - 1, yB + rectBHeight - 1);
-        rects.add(B);
-
-        Rect C = new Rect(xC, yC, xC + rectCWidth - 1, yC + rectCHeight - 1);
-        rects.add(C);
-
-        return rects;
+        if(rightShape == null || rightShapeWidth != spriteWidth)
+        {
+            rightShape = shape.mirror(spriteWidth);
+            rightShapeWidth = spriteWidth;
+        }
+        return rightShape;
     }
 
     /**
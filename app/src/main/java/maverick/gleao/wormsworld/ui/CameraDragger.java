@@ -0,0 +1,54 @@
+package maverick.gleao.wormsworld.ui;
+
+import android.util.Log;
+import android.view.MotionEvent;
+
+import maverick.gleao.wormsworld.logic.Game;
+
+/**
+ * Moves a game's camera by dragging a finger across the view that draws the game.
+ */
+class CameraDragger {
+    private static final String TAG = "CameraDragger";
+
+    private final Game game;
+    private float oldX;
+    private float oldY;
+
+    CameraDragger(Game game) {
+        this.game = game;
+    }
+
+    /** Returns true if the event was used to drag the camera */
+    boolean onTouchEvent(MotionEvent event) {
+        if(event.getAction() == MotionEvent.ACTION_DOWN)
+        {
+            Log.d(TAG, "onTouchEvent - ACTION_DOWN: x = " + event.getX() + ", y = " + event.getY());
+
+            oldX = event.getX();
+            oldY = event.getY();
+
+            return true;
+        }
+        else if (event.getAction() == MotionEvent.ACTION_MOVE)
+        {
+            //Read the new position
+            float newX = event.getX();
+            float newY = event.getY();
+            float deltaX = newX - oldX;
+            float deltaY = newY - oldY;
+
+            Log.d(TAG, "onTouchEvent - ACTION_MOVE: dx " + deltaX + ", dy = " + deltaY);
+
+            //Move the camera
+            game.moveCamera((int)(-deltaX),(int)(-deltaY));
+
+            //Update the old position
+            oldX = newX;
+            oldY = newY;
+
+            return true;
+        }
+        return false;
+    }
+}
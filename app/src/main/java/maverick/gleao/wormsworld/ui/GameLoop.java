@@ -0,0 +1,132 @@
+package maverick.gleao.wormsworld.ui;
+
+import android.view.Choreographer;
+
+import maverick.gleao.wormsworld.logic.Game;
+
+/**
+ * Runs a game on its own thread, paced by the display's vsync.
+ * <p>
+ *     On every vsync, the frame's time is handed over to the simulation thread, which advances the game by the real
+ *     time between frames, and the listener is asked to draw (on the UI thread). The game's state is only advanced
+ *     by the simulation thread, so slow drawing never delays the physics, and vice versa.
+ * </p>
+ */
+class GameLoop implements Choreographer.FrameCallback, Runnable {
+    /** Receives the loop's frames */
+    interface Listener {
+        /** Called on the UI thread, on every vsync */
+        void onFrame();
+
+        /** Called on the simulation thread, right after the game is advanced */
+        void onAdvance();
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    private final Game game;
+    private final Listener listener;
+    private final Thread thread;
+    private final Object lock = new Object();
+
+    //guarded by lock
+    private boolean running;
+    private boolean quit;
+    private boolean restarted;
+    private long pendingFrameTime = -1;
+
+    //only used by the simulation thread
+    private long lastFrameTime;
+    private long leftoverNanos;
+
+    GameLoop(Game game, Listener listener) {
+        this.game = game;
+        this.listener = listener;
+        this.thread = new Thread(this, "GameLoop");
+    }
+
+    /** Starts the simulation thread (the game only advances after resume) */
+    void start() {
+        thread.start();
+    }
+
+    /** Starts receiving vsync callbacks; the time spent paused isn't simulated. Must be called on the UI thread */
+    void resume() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            restarted = true;
+        }
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    /** Stops advancing and drawing the game. Must be called on the UI thread */
+    void pause() {
+        synchronized (lock) {
+            running = false;
+            pendingFrameTime = -1;
+        }
+        Choreographer.getInstance().removeFrameCallback(this);
+    }
+
+    /** Stops the loop for good, ending the simulation thread. Must be called on the UI thread */
+    void quit() {
+        pause();
+        synchronized (lock) {
+            quit = true;
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            //if the simulation is behind, it skips straight to the latest frame
+            pendingFrameTime = frameTimeNanos;
+            lock.notifyAll();
+        }
+        listener.onFrame();
+        Choreographer.getInstance().postFrameCallback(this);
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            long frameTime;
+            boolean firstFrame;
+            synchronized (lock) {
+                try {
+                    while (!quit && pendingFrameTime < 0) {
+                        lock.wait();
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (quit) {
+                    return;
+                }
+                frameTime = pendingFrameTime;
+                pendingFrameTime = -1;
+                firstFrame = restarted;
+                restarted = false;
+            }
+
+            if (!firstFrame) {
+                //whole milliseconds are simulated, the rest is kept for the next frame
+                long elapsed = frameTime - lastFrameTime + leftoverNanos;
+                game.advance(elapsed / NANOS_PER_MILLI);
+                leftoverNanos = elapsed % NANOS_PER_MILLI;
+            }
+            else {
+                leftoverNanos = 0;
+            }
+            lastFrameTime = frameTime;
+            listener.onAdvance();
+        }
+    }
+}
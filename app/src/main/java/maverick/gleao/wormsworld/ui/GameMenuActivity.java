@@ -11,6 +11,7 @@ import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.TextView;
@@ -44,6 +45,9 @@ public class GameMenuActivity extends Activity implements AdapterView.OnItemSele
         final TextView textLevelHighScore = (TextView) findViewById(R.id.textLevelHighScore);
         textLevelHighScore.setText("Highscore: " + HighScores.getInstance().getScore(level));
 
+        final CheckBox checkSurface = (CheckBox) findViewById(R.id.checkSurface);
+        final CheckBox checkSwept = (CheckBox) findViewById(R.id.checkSwept);
+
         Button btnG = (Button) findViewById(R.id.btnGame);
         btnG.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -53,6 +57,8 @@ public class GameMenuActivity extends Activity implements AdapterView.OnItemSele
                     public void run() {
                         Intent iv = new Intent(getApplicationContext(),GamePlayActivity.class);
                         iv.putExtra(GamePlayActivity.KEY_MAINACTIVITY_LEVEL,level);
+                        iv.putExtra(GamePlayActivity.KEY_MAINACTIVITY_SURFACE,checkSurface.isChecked());
+                        iv.putExtra(GamePlayActivity.KEY_MAINACTIVITY_SWEPT,checkSwept.isChecked());
                         startActivity(iv);
                         finish();
                     }
@@ -3,10 +3,9 @@ package maverick.gleao.wormsworld.ui;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.ActivityInfo;
-import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.os.Bundle;
-import android.os.Handler;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
@@ -16,31 +15,36 @@ import android.widget.ProgressBar;
 import android.widget.RelativeLayout;
 import android.widget.TextView;
 
-import java.util.Observable;
-import java.util.Observer;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.io.IOException;
 
 import maverick.gleao.wormsworld.logic.Boo;
 import maverick.gleao.wormsworld.logic.Coin;
 import maverick.gleao.wormsworld.logic.Flag;
 import maverick.gleao.wormsworld.logic.Flake;
 import maverick.gleao.wormsworld.logic.Game;
+import maverick.gleao.wormsworld.logic.GameEventQueue;
+import maverick.gleao.wormsworld.logic.MapCache;
+import maverick.gleao.wormsworld.logic.MapImage;
 import maverick.gleao.wormsworld.logic.Star;
 import maverick.gleao.wormsworld.logic.Worm;
 
 public class GamePlayActivity extends Activity {
     private static final String TAG = "GamePlayActivity";
     public static final String KEY_MAINACTIVITY_LEVEL = "maverick.gleao.wormsdestruction.mainActivity_level";
+    //set to true to draw the game on a SurfaceView, from the game loop's thread
+    public static final String KEY_MAINACTIVITY_SURFACE = "maverick.gleao.wormsdestruction.mainActivity_surface";
+    //set to true to let the bodies slide along walls (swept collisions) instead of stopping on contact
+    public static final String KEY_MAINACTIVITY_SWEPT = "maverick.gleao.wormsdestruction.mainActivity_swept";
 
     private Game game;
     private GamePlayView gamePlayView;
+    private GamePlaySurfaceView gamePlaySurfaceView;
     private Game.Level level;
 
-    Timer timer;
-    TimerTask timerTask;
-    final Handler handler = new Handler();
-    private final long DT = 100;
+    //the game is drawn on every vsync, while its physics run at a fixed step on the loop's thread (see Game.advance)
+    private GameLoop gameLoop;
+    //a level image is split into tiles if it would take more than this fraction of the heap
+    private static final int MAX_WHOLE_IMAGE_MEMORY_FRACTION = 8;
 
     ProgressBar timeBar;
     RelativeLayout mainLayout;
@@ -58,62 +62,90 @@ public class GamePlayActivity extends Activity {
         opts.inScaled = false;
 
         level = (Game.Level)getIntent().getSerializableExtra(KEY_MAINACTIVITY_LEVEL);
-        Bitmap gameMap = null;
-        Bitmap keyMap = null;
-        Bitmap background = null;
+        int mapId = 0;
+        int keyId = 0;
+        int backgroundId = 0;
+        int backdropId = 0;
         switch (level) {
             case SHIP:
-                gameMap = BitmapFactory.decodeResource(getResources(), R.drawable.ship, opts);
-                keyMap = BitmapFactory.decodeResource(getResources(), R.drawable.ship_key, opts);
-                background = BitmapFactory.decodeResource(getResources(), R.drawable.ship_background, opts);
-                mainLayout.setBackgroundResource(R.drawable.ocean);
+                mapId = R.drawable.ship;
+                keyId = R.drawable.ship_key;
+                backgroundId = R.drawable.ship_background;
+                backdropId = R.drawable.ocean;
                 break;
             case SNOWMAN:
-                gameMap = BitmapFactory.decodeResource(getResources(), R.drawable.snowman, opts);
-                keyMap = BitmapFactory.decodeResource(getResources(), R.drawable.snowman_key, opts);
-                background = BitmapFactory.decodeResource(getResources(), R.drawable.snowman_background, opts);
-                mainLayout.setBackgroundResource(R.drawable.snowfall_reports);
+                mapId = R.drawable.snowman;
+                keyId = R.drawable.snowman_key;
+                backgroundId = R.drawable.snowman_background;
+                backdropId = R.drawable.snowfall_reports;
                 break;
             case DINOSAURS:
-                gameMap = BitmapFactory.decodeResource(getResources(), R.drawable.dinosaurs, opts);
-                keyMap = BitmapFactory.decodeResource(getResources(), R.drawable.dinosaurs_key, opts);
-                background = BitmapFactory.decodeResource(getResources(), R.drawable.dinosaurs_background, opts);
-                mainLayout.setBackgroundResource(R.drawable.aliya06);
+                mapId = R.drawable.dinosaurs;
+                keyId = R.drawable.dinosaurs_key;
+                backgroundId = R.drawable.dinosaurs_background;
+                backdropId = R.drawable.aliya06;
                 break;
             case DESERT:
-                gameMap = BitmapFactory.decodeResource(getResources(), R.drawable.desert, opts);
-                keyMap = BitmapFactory.decodeResource(getResources(), R.drawable.desert_key, opts);
-                background = BitmapFactory.decodeResource(getResources(), R.drawable.desert_background, opts);
-                mainLayout.setBackgroundResource(R.drawable.desertimage);
+                mapId = R.drawable.desert;
+                keyId = R.drawable.desert_key;
+                backgroundId = R.drawable.desert_background;
+                backdropId = R.drawable.desertimage;
                 break;
             case TYCOON:
-                gameMap = BitmapFactory.decodeResource(getResources(), R.drawable.tycoon, opts);
-                keyMap = BitmapFactory.decodeResource(getResources(), R.drawable.tycoon_key, opts);
-                background = BitmapFactory.decodeResource(getResources(), R.drawable.tycoon_background, opts);
-                mainLayout.setBackgroundResource(R.drawable.oilrig);
+                mapId = R.drawable.tycoon;
+                keyId = R.drawable.tycoon_key;
+                backgroundId = R.drawable.tycoon_background;
+                backdropId = R.drawable.oilrig;
                 break;
             case VOLCANO:
-                gameMap = BitmapFactory.decodeResource(getResources(), R.drawable.volcano, opts);
-                keyMap = BitmapFactory.decodeResource(getResources(), R.drawable.volcano_key, opts);
-                background = BitmapFactory.decodeResource(getResources(), R.drawable.volcano_background, opts);
-                mainLayout.setBackgroundResource(R.drawable.vulcao);
+                mapId = R.drawable.volcano;
+                keyId = R.drawable.volcano_key;
+                backgroundId = R.drawable.volcano_background;
+                backdropId = R.drawable.vulcao;
                 break;
             case JAPAN:
-                gameMap = BitmapFactory.decodeResource(getResources(), R.drawable.japan, opts);
-                keyMap = BitmapFactory.decodeResource(getResources(), R.drawable.japan_key, opts);
-                background = BitmapFactory.decodeResource(getResources(), R.drawable.japan_background, opts);
-                mainLayout.setBackgroundResource(R.drawable.japanimage);
+                mapId = R.drawable.japan;
+                keyId = R.drawable.japan_key;
+                backgroundId = R.drawable.japan_background;
+                backdropId = R.drawable.japanimage;
                 break;
         }
 
+        boolean useSurface = getIntent().getBooleanExtra(KEY_MAINACTIVITY_SURFACE, false);
+        //a surface is drawn behind the window, so it has to draw the backdrop itself
+        if (!useSurface) {
+            mainLayout.setBackgroundResource(backdropId);
+        }
+
+        MapImage gameMap = loadMapImage(mapId, opts);
+        MapImage background = loadMapImage(backgroundId, opts);
+
+        //The key only needs to be decoded if its collision data hasn't been cached yet
+        MapImage keyMap = null;
+        MapCache mapCache = new MapCache(getCacheDir(), keyId, getResources().openRawResource(keyId));
+        if(!mapCache.open())
+        {
+            keyMap = loadMapImage(keyId, opts);
+        }
+
         loadSprites(opts);
 
-        game = new Game(gameMap, keyMap, background, level);
+        game = new Game(gameMap, keyMap, background, level, mapCache);
+        if (getIntent().getBooleanExtra(KEY_MAINACTIVITY_SWEPT, false)) {
+            game.setCollisionMode(Game.CollisionMode.SWEPT);
+        }
 
         FrameLayout Draw = (FrameLayout) findViewById(R.id.Draw);
-        gamePlayView = new GamePlayView(this, game);
-        Draw.addView(gamePlayView);
-        gamePlayView.requestFocus();
+        if (useSurface) {
+            gamePlaySurfaceView = new GamePlaySurfaceView(this, game, BitmapFactory.decodeResource(getResources(), backdropId, opts));
+            Draw.addView(gamePlaySurfaceView);
+            gamePlaySurfaceView.requestFocus();
+        }
+        else {
+            gamePlayView = new GamePlayView(this, game);
+            Draw.addView(gamePlayView);
+            gamePlayView.requestFocus();
+        }
 
         Log.d(TAG, "onCreate");
 
@@ -216,45 +248,47 @@ public class GamePlayActivity extends Activity {
         timeBar.setMax((int)game.getLevelMaxTime(level));
         timeBar.setProgress(timeBar.getMax());
 
-        //register observer
-        Observer gameObserver = new Observer() {
+        //the game's events are drained once per frame, on the UI thread (score updates are coalesced by the queue)
+        final GameEventQueue.Listener gameEventListener = new GameEventQueue.Listener() {
             @Override
-            public void update(Observable observable, Object data) {
-                if (data instanceof Game.GameEvent) {
-                    final Game.GameEvent event = (Game.GameEvent) data;
-                    if (event == Game.GameEvent.SCORE_UPDATE)
-                    {
-                        textScoreBoard.post(new Runnable()
-                        {
-                            public void run() {
-                                textScoreBoard.setText("Score: " + game.getScore());
-                            }
-                        });
-                    }
-                    else if ((event == Game.GameEvent.LOSS_BOO) || (event == Game.GameEvent.LOSS_TIMEUP) ||
-                            (event == Game.GameEvent.LOSS_OUTOFBOUNDS) || (event == Game.GameEvent.WIN))
-                    {
-                        /*Thread myThread = new Thread(){
-                            @Override
-                            public void run() {
-                                endGame(event);
-                            }
-                        };
-                        myThread.start();*/
-                        endGame(event);
-                    }
+            public void onGameEvent(Game.GameEvent event) {
+                if (event == Game.GameEvent.SCORE_UPDATE)
+                {
+                    textScoreBoard.setText("Score: " + game.getScore());
+                }
+                else if ((event == Game.GameEvent.LOSS_BOO) || (event == Game.GameEvent.LOSS_TIMEUP) ||
+                        (event == Game.GameEvent.LOSS_OUTOFBOUNDS) || (event == Game.GameEvent.WIN))
+                {
+                    endGame(event);
                 }
             }
         };
 
-        game.addObserver(gameObserver);
+        gameLoop = new GameLoop(game, new GameLoop.Listener() {
+            @Override
+            public void onFrame() {
+                if (gamePlayView != null) {
+                    gamePlayView.invalidate();
+                }
+                timeBar.setProgress((int)game.getTimeRemaining());
+                game.drainEvents(gameEventListener);
+            }
+
+            @Override
+            public void onAdvance() {
+                if (gamePlaySurfaceView != null) {
+                    gamePlaySurfaceView.render();
+                }
+            }
+        });
+        gameLoop.start();
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        //onResume we start our timer so it can start when the app comes from the background
-        startTimer();
+        //the game continues when the app comes from the background
+        gameLoop.resume();
         Integer music_id = getLevelMusic(game.getLevel());
         if(music_id != null)
         {
@@ -265,56 +299,17 @@ public class GamePlayActivity extends Activity {
     @Override
     protected void onPause() {
         super.onPause();
-        //onResume we start our timer so it can start when the app comes from the background
-        stoptimertask();
+        gameLoop.pause();
         Music.stop(this);
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        //onResume we start our timer so it can start when the app comes from the background
-        stoptimertask();
+        gameLoop.quit();
     }
 
 
-    public void startTimer() {
-        //set a new Timer
-        timer = new Timer();
-        //initialize the TimerTask's job
-        initializeTimerTask();
-        //schedule the timer, after the first 5000ms the TimerTask will run every 10000ms
-        timer.schedule(timerTask, 0, DT);
-    }
-
-    public void stoptimertask() {
-        //stop the timer, if it's not already null
-        if (timer != null)
-        {
-            timer.cancel();
-            timer = null;
-        }
-    }
-
-    public void initializeTimerTask()
-    {
-        timerTask = new TimerTask()
-        {
-            public void run()
-            {
-                game.update(DT);
-                handler.post(new Runnable()
-                {
-                    public void run()
-                    {
-                        gamePlayView.invalidate();
-                        timeBar.setProgress((int)game.getTimeRemaining());
-                    }
-                });
-            }
-        };
-    }
-
     private static Integer getLevelMusic(Game.Level level)
     {
         Integer music_id = null;
@@ -358,6 +353,28 @@ public class GamePlayActivity extends Activity {
         finish();
     }
 
+    /**
+     * Loads one of the level's images, splitting it into tiles if keeping it whole would take too much memory.
+     */
+    MapImage loadMapImage(int resourceId, BitmapFactory.Options opts)
+    {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inScaled = false;
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(getResources(), resourceId, bounds);
+        long bytes = 4L * bounds.outWidth * bounds.outHeight;
+        if(bytes > Runtime.getRuntime().maxMemory() / MAX_WHOLE_IMAGE_MEMORY_FRACTION)
+        {
+            try {
+                BitmapRegionDecoder decoder = BitmapRegionDecoder.newInstance(getResources().openRawResource(resourceId), false);
+                return new MapImage(decoder, opts);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return new MapImage(BitmapFactory.decodeResource(getResources(), resourceId, opts));
+    }
+
     void loadSprites(BitmapFactory.Options opts)
     {
         Worm.loadSprites(BitmapFactory.decodeResource(getResources(), R.drawable.immobile, opts),
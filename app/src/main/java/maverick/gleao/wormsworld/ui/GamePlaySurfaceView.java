@@ -0,0 +1,99 @@
+package maverick.gleao.wormsworld.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import maverick.gleao.wormsworld.logic.Game;
+
+/**
+ * Draws a game on its own surface, from the game loop's thread, instead of waiting for the UI thread to redraw a view.
+ * <p>
+ *     The surface sits behind the activity's window, so the level's backdrop (which the plain view lets the layout
+ *     draw) is drawn on the surface before the game.
+ * </p>
+ */
+public class GamePlaySurfaceView extends SurfaceView implements SurfaceHolder.Callback {
+    private final Game game;
+    private final Bitmap backdrop;
+    private final CameraDragger cameraDragger;
+
+    //the surface can only be drawn on between surfaceCreated and surfaceDestroyed
+    private final Object surfaceLock = new Object();
+    private boolean surfaceReady;
+    private int surfaceWidth;
+    private int surfaceHeight;
+
+    public GamePlaySurfaceView(Context context, Game game, Bitmap backdrop) {
+        super(context);
+        this.game = game;
+        this.backdrop = backdrop;
+        this.cameraDragger = new CameraDragger(game);
+        getHolder().addCallback(this);
+        setFocusable(true);
+        setFocusableInTouchMode(true);
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        synchronized (surfaceLock) {
+            surfaceReady = true;
+        }
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        synchronized (surfaceLock) {
+            surfaceWidth = width;
+            surfaceHeight = height;
+        }
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        //waits for a frame being drawn, since the surface is released once this returns
+        synchronized (surfaceLock) {
+            surfaceReady = false;
+        }
+    }
+
+    /** Draws the game's latest state on the surface. Must be called on the game loop's thread */
+    void render() {
+        synchronized (surfaceLock) {
+            if (!surfaceReady || surfaceWidth == 0 || surfaceHeight == 0) {
+                return;
+            }
+            SurfaceHolder holder = getHolder();
+            Canvas canvas = holder.lockCanvas();
+            if (canvas == null) {
+                return;
+            }
+            try {
+                if (backdrop != null) {
+                    canvas.drawBitmap(backdrop, new Rect(0, 0, backdrop.getWidth(), backdrop.getHeight()),
+                            new Rect(0, 0, surfaceWidth, surfaceHeight), new Paint());
+                }
+                else {
+                    canvas.drawColor(Color.BLACK);
+                }
+                GamePlayView.drawGame(canvas, game, surfaceWidth, surfaceHeight);
+            } finally {
+                holder.unlockCanvasAndPost(canvas);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (cameraDragger.onTouchEvent(event)) {
+            return true;
+        }
+        return super.onTouchEvent(event);
+    }
+}
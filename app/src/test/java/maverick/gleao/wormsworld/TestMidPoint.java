@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import maverick.gleao.wormsworld.logic.MidPoint;
 import maverick.gleao.wormsworld.logic.Vec2;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -180,4 +181,95 @@ public class TestMidPoint {
         assertEquals(new Vec2<Integer>(6,-1),res.get(5));
         assertEquals(new Vec2<Integer>(7,-1),res.get(6));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMidPoint_Array() throws Exception {
+        //Every line of the table (|dx|, |dy| <= 8) and a few longer ones, which are computed, from several initial points
+        int[][] starts = {{0,0}, {2,-3}, {-5,7}};
+        for(int[] start : starts)
+        {
+            for(int dx = -10; dx <= 10; dx++)
+            {
+                for(int dy = -10; dy <= 10; dy++)
+                {
+                    int[] expected = rasterize(start[0], start[1], start[0] + dx, start[1] + dy);
+                    int[] points = new int[2 * MidPoint.countPoints(start[0], start[1], start[0] + dx, start[1] + dy)];
+                    int count = MidPoint.apply(start[0], start[1], start[0] + dx, start[1] + dy, points);
+                    assertEquals(expected.length / 2, count);
+                    assertArrayEquals("(" + dx + "," + dy + ")", expected, points);
+
+                    ArrayList<Vec2<Integer>> res = MidPoint.apply(start[0], start[1], start[0] + dx, start[1] + dy);
+                    assertEquals(expected.length / 2, res.size());
+                    for(int i = 0; i < res.size(); i++)
+                    {
+                        assertEquals(new Vec2<Integer>(expected[2 * i], expected[2 * i + 1]), res.get(i));
+                    }
+
+                    final ArrayList<Vec2<Integer>> visited = new ArrayList<Vec2<Integer>>();
+                    MidPoint.apply(start[0], start[1], start[0] + dx, start[1] + dy, new MidPoint.Visitor() {
+                        @Override
+                        public boolean visit(int x, int y) {
+                            visited.add(new Vec2<Integer>(x, y));
+                            return true;
+                        }
+                    });
+                    assertEquals(res, visited);
+
+                    if(0 <= dy && dy <= dx)
+                    {
+                        assertEquals(res, MidPoint.applyFirstOctant(new Vec2<Integer>(start[0], start[1]),
+                                new Vec2<Integer>(start[0] + dx, start[1] + dy)));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMidPoint_Visitor() throws Exception {
+        final ArrayList<Vec2<Integer>> visited = new ArrayList<Vec2<Integer>>();
+        boolean finished = MidPoint.apply(0, 0, 4, 11, new MidPoint.Visitor() {
+            @Override
+            public boolean visit(int x, int y) {
+                visited.add(new Vec2<Integer>(x, y));
+                return y < 5;
+            }
+        });
+        assertEquals(false, finished);
+        assertEquals(6, visited.size());
+        assertEquals(new Vec2<Integer>(0, 0), visited.get(0));
+        assertEquals(new Vec2<Integer>(2, 5), visited.get(5));
+
+        visited.clear();
+        finished = MidPoint.apply(1, 0, 7, -1, new MidPoint.Visitor() {
+            @Override
+            public boolean visit(int x, int y) {
+                visited.add(new Vec2<Integer>(x, y));
+                return true;
+            }
+        });
+        assertEquals(true, finished);
+        assertEquals(MidPoint.apply(1, 0, 7, -1), visited);
+    }
+
+    /**
+     * Rasterizes a line without the midpoint algorithm's octant conversions: the i-th pixel is i pixels away from the
+     * initial point along the longest axis and round(i * minor / major) pixels away along the other one, with the ties
+     * rounded towards the final point (which is what the algorithm does on every octant).
+     */
+    private static int[] rasterize(int xi, int yi, int xf, int yf) {
+        int dx = xf - xi;
+        int dy = yf - yi;
+        boolean xMajor = Math.abs(dx) >= Math.abs(dy);
+        int major = Math.max(Math.abs(dx), Math.abs(dy));
+        int minor = Math.min(Math.abs(dx), Math.abs(dy));
+        int[] points = new int[2 * (major + 1)];
+        for(int i = 0; i <= major; i++)
+        {
+            int across = (major == 0 ? 0 : (2 * minor * i + major) / (2 * major));
+            points[2 * i] = xi + Integer.signum(dx) * (xMajor ? i : across);
+            points[2 * i + 1] = yi + Integer.signum(dy) * (xMajor ? across : i);
+        }
+        return points;
+    }
+}
@@ -0,0 +1,80 @@
+package maverick.gleao.wormsworld;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+
+import maverick.gleao.wormsworld.logic.Game;
+import maverick.gleao.wormsworld.logic.SimulationRunner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs games without a display (no sprite or Android resource is needed).
+ */
+public class TestSimulationRunner {
+    @Test
+    public void testSyntheticGameEnds() throws Exception
+    {
+        Game game = SimulationRunner.createSyntheticGame(400, 300, Game.Level.SNOWMAN, 3);
+        SimulationRunner.Result result = new SimulationRunner(game, SimulationRunner.randomInput(3)).run(100000);
+
+        //Every game ends, at the latest when the time is up
+        assertNotNull(result.getOutcome());
+        assertTrue(result.getTicks() <= Game.getLevelMaxTime(Game.Level.SNOWMAN) / Game.physicsStep);
+    }
+
+    @Test
+    public void testSyntheticGameIsDeterministic() throws Exception
+    {
+        SimulationRunner.Result first = new SimulationRunner(SimulationRunner.createSyntheticGame(400, 300, Game.Level.SHIP, 7),
+                SimulationRunner.randomInput(11)).run(100000);
+        SimulationRunner.Result second = new SimulationRunner(SimulationRunner.createSyntheticGame(400, 300, Game.Level.SHIP, 7),
+                SimulationRunner.randomInput(11)).run(100000);
+
+        assertEquals(first.getTicks(), second.getTicks());
+        assertEquals(first.getOutcome(), second.getOutcome());
+        assertEquals(first.getScore(), second.getScore());
+        //Every body must be on the same position after every step
+        long[] firstHashes = first.getPositionHashes();
+        long[] secondHashes = second.getPositionHashes();
+        assertEquals(first.getTicks(), firstHashes.length);
+        for(int tick = 0; tick < firstHashes.length; tick++)
+        {
+            assertEquals("positions differ after step " + tick, firstHashes[tick], secondHashes[tick]);
+        }
+
+        //A different input moves the hero differently
+        SimulationRunner.Result other = new SimulationRunner(SimulationRunner.createSyntheticGame(400, 300, Game.Level.SHIP, 7),
+                SimulationRunner.randomInput(12)).run(100000);
+        assertFalse(Arrays.equals(firstHashes, other.getPositionHashes()));
+    }
+
+    @Test
+    public void testLevelKey() throws Exception
+    {
+        //The unit tests run from the module's directory
+        File keyFile = new File("src/main/res/drawable/snowman_key.png");
+        Assume.assumeTrue(keyFile.exists());
+        BufferedImage image = ImageIO.read(keyFile);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] key = image.getRGB(0, 0, width, height, null, 0, width);
+
+        Game game = SimulationRunner.createGame(width, height, key, Game.Level.SNOWMAN, 1);
+        SimulationRunner.Result result = new SimulationRunner(game, null).run(50);
+
+        //Without input, the hero just stands on the map
+        assertEquals(50, result.getTicks());
+        assertNull(result.getOutcome());
+    }
+}
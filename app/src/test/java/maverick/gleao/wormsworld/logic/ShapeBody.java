@@ -0,0 +1,45 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Bitmap;
+
+/**
+ * Dynamic body without a sprite, with a given collision shape, used by the unit tests.
+ */
+class ShapeBody extends Body {
+    private final CollisionShape shape;
+    /**
+     * Store where the body's state is kept (the tests read its velocity from it).
+     */
+    final BodyStore store;
+
+    ShapeBody(BodyStore store, double x, double y, CollisionShape shape)
+    {
+        super(store, x, y, 1000, 1000, 0, 0, false);
+        this.shape = shape;
+        this.store = store;
+    }
+
+    @Override
+    protected CollisionShape getCollisionShape()
+    {
+        return shape;
+    }
+
+    @Override
+    protected Bitmap getSpriteSheet()
+    {
+        return null;
+    }
+
+    @Override
+    protected int getFrameCount()
+    {
+        return 1;
+    }
+
+    @Override
+    protected long getFrameTime()
+    {
+        return 100;
+    }
+}
@@ -0,0 +1,71 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Color;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Builds maps from arrays of colors (no bitmap is needed), for the unit tests.
+ */
+class SyntheticMaps {
+    /**
+     * Returns the key of an empty map (every pixel is WHITE).
+     */
+    static int[] emptyKey(int width, int height)
+    {
+        int[] key = new int[width * height];
+        Arrays.fill(key, Color.WHITE);
+        return key;
+    }
+
+    /**
+     * Fills a rectangle of a key with a color (the parts outside the key are ignored).
+     */
+    static void fill(int[] key, int width, int x, int y, int rectWidth, int rectHeight, int color)
+    {
+        int height = key.length / width;
+        for(int row = Math.max(y, 0); row < Math.min(y + rectHeight, height); row++)
+        {
+            for(int column = Math.max(x, 0); column < Math.min(x + rectWidth, width); column++)
+            {
+                key[row * width + column] = color;
+            }
+        }
+    }
+
+    static Map create(int width, int height, int[] key)
+    {
+        MapImage image = new MapImage(width, height, key);
+        return new Map(image, image, null);
+    }
+
+    /**
+     * Creates a map with a floor, platforms and stars, like the ones used by SimulationRunner.
+     */
+    static Map random(int width, int height, long seed)
+    {
+        return create(width, height, SimulationRunner.createSyntheticKey(width, height, new Random(seed)));
+    }
+
+    /**
+     * Tests, pixel by pixel, if a shape placed at a position overlaps a tangible pixel of a map.
+     */
+    static boolean overlaps(Map map, int[] rects, int x, int y)
+    {
+        for(int i = 0; i < rects.length; i += 4)
+        {
+            for(int row = y + rects[i + 1]; row < y + rects[i + 1] + rects[i + 3]; row++)
+            {
+                for(int column = x + rects[i]; column < x + rects[i] + rects[i + 2]; column++)
+                {
+                    if(map.isTangible(column, row))
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,99 @@
+package maverick.gleao.wormsworld.logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks BodyGrid.query against a brute-force collision test with every body.
+ */
+public class TestBodyGrid {
+    private static final int width = 500;
+    private static final int height = 300;
+    private static final CollisionShape[] shapes = {
+            new CollisionShape(new int[]{0, 0, 10, 6, 2, 6, 6, 8}),
+            new CollisionShape(new int[]{-5, -5, 4, 4}),
+            new CollisionShape(new int[]{0, 0, 150, 20}),
+            new CollisionShape(new int[]{0, 0, 64, 64, 100, 90, 10, 10})
+    };
+
+    @Test
+    public void testQueryMatchesBruteForce() throws Exception
+    {
+        Random rand = new Random(3);
+        BodyStore store = new BodyStore(300);
+        BodyGrid grid = new BodyGrid(width, height);
+        ArrayList<Body> bodies = new ArrayList<Body>();
+        //Some bodies are partly (or completely) outside the map
+        for(int i = 0; i < 300; i++)
+        {
+            Body body = new ShapeBody(store, rand.nextInt(width + 200) - 100, rand.nextInt(height + 200) - 100,
+                    shapes[rand.nextInt(shapes.length)]);
+            bodies.add(body);
+            grid.add(body);
+        }
+        //Removed bodies must never be found
+        ArrayList<Body> removed = new ArrayList<Body>();
+        for(int i = 0; i < 50; i++)
+        {
+            Body body = bodies.remove(rand.nextInt(bodies.size()));
+            grid.remove(body);
+            removed.add(body);
+        }
+
+        ArrayList<Body> result = new ArrayList<Body>();
+        int found = 0;
+        for(int trial = 0; trial < 2000; trial++)
+        {
+            //Half of the queries are done with bodies of the grid
+            Body query = (trial % 2 == 0 ? bodies.get(rand.nextInt(bodies.size()))
+                    : new ShapeBody(store, rand.nextInt(width + 200) - 100, rand.nextInt(height + 200) - 100,
+                    shapes[rand.nextInt(shapes.length)]));
+            result.clear();
+            grid.query(query, result);
+
+            assertFalse(result.contains(query));
+            assertEquals("duplicates", result.size(), new HashSet<Body>(result).size());
+            for(int i = 0; i < removed.size(); i++)
+            {
+                assertFalse(result.contains(removed.get(i)));
+            }
+            for(int i = 0; i < bodies.size(); i++)
+            {
+                Body body = bodies.get(i);
+                if(body != query && query.colidesWith(body))
+                {
+                    assertTrue("missed a colliding body on trial " + trial, result.contains(body));
+                    found++;
+                }
+            }
+        }
+        assertTrue(found > 1000);
+    }
+
+    @Test
+    public void testEmptyShape() throws Exception
+    {
+        BodyStore store = new BodyStore(2);
+        BodyGrid grid = new BodyGrid(width, height);
+        Body body = new ShapeBody(store, 10, 10, shapes[0]);
+        Body empty = new ShapeBody(store, 10, 10, new CollisionShape(new int[0]));
+        grid.add(body);
+        grid.add(empty);
+
+        //A body without a shape is never stored nor found
+        ArrayList<Body> result = new ArrayList<Body>();
+        grid.query(empty, result);
+        assertTrue(result.isEmpty());
+        Body other = new ShapeBody(new BodyStore(1), 12, 12, shapes[0]);
+        grid.query(other, result);
+        assertEquals(1, result.size());
+        assertTrue(result.contains(body));
+    }
+}
@@ -0,0 +1,85 @@
+package maverick.gleao.wormsworld.logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the shortcuts taken by Body.integrate against a plain walk along the body's trajectory.
+ */
+public class TestBodyIntegration {
+    private static final int[] rects = {0, 0, 10, 6, 2, 6, 6, 8};
+
+    @Test
+    public void testClearanceSkipMatchesPixelWalk() throws Exception
+    {
+        CollisionShape shape = new CollisionShape(rects);
+        ArrayList<Body> none = new ArrayList<Body>();
+        Random rand = new Random(5);
+        int collisions = 0;
+        int falls = 0;
+        for(int seed = 0; seed < 4; seed++)
+        {
+            Map map = SyntheticMaps.random(400, 300, seed);
+            BodyStore store = new BodyStore(1);
+            Body body = new ShapeBody(store, 0, 0, shape);
+            for(int trial = 0; trial < 2000; trial++)
+            {
+                int x = rand.nextInt(440) - 20;
+                int y = rand.nextInt(340) - 20;
+                if(SyntheticMaps.overlaps(map, rects, x, y))
+                {
+                    trial--;
+                    continue;
+                }
+                //A third of the bodies fall (or rise) straight, which is where the drop distance is used
+                double vx = (rand.nextInt(3) == 0 ? 0 : rand.nextInt(1201) - 600);
+                double vy = rand.nextInt(1201) - 600;
+                long deltaT = 1 + rand.nextInt(400);
+                store.x[0] = x;
+                store.y[0] = y;
+                store.vx[0] = vx;
+                store.vy[0] = vy;
+                store.sleeping[0] = false;
+
+                //Plain walk: test every point of the trajectory, pixel by pixel, until the first collision
+                int goalX = (int) Math.round(x + (deltaT / 1000.0) * vx);
+                int goalY = (int) Math.round(y + (deltaT / 1000.0) * vy);
+                int[] points = new int[2 * MidPoint.countPoints(x, y, goalX, goalY)];
+                int count = MidPoint.apply(x, y, goalX, goalY, points);
+                int endX = x;
+                int endY = y;
+                boolean collision = false;
+                for(int i = 1; i < count && !collision; i++)
+                {
+                    collision = SyntheticMaps.overlaps(map, rects, points[2 * i], points[2 * i + 1]);
+                    if(!collision)
+                    {
+                        endX = points[2 * i];
+                        endY = points[2 * i + 1];
+                    }
+                }
+                if(collision)
+                {
+                    collisions++;
+                }
+                if(vx == 0 && vy > 0)
+                {
+                    falls++;
+                }
+
+                body.updatePos(deltaT, map, none);
+                String where = "from (" + x + "," + y + ") to (" + goalX + "," + goalY + ") on map " + seed;
+                assertEquals(where, endX, body.getRoundedX());
+                assertEquals(where, endY, body.getRoundedY());
+            }
+        }
+        //Both the collisions and the clear stretches must have been exercised
+        assertTrue(collisions > 1000);
+        assertTrue(falls > 1000);
+    }
+}
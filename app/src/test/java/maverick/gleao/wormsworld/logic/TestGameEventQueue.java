@@ -0,0 +1,143 @@
+package maverick.gleao.wormsworld.logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the order in which GameEventQueue delivers the events and the coalescing of score updates.
+ */
+public class TestGameEventQueue {
+    /**
+     * Listener that stores the events it receives.
+     */
+    private static class Recorder implements GameEventQueue.Listener {
+        final ArrayList<Game.GameEvent> events = new ArrayList<Game.GameEvent>();
+
+        @Override
+        public void onGameEvent(Game.GameEvent event)
+        {
+            events.add(event);
+        }
+    }
+
+    private static void raiseAll(GameEventQueue queue, Game.GameEvent... events)
+    {
+        for(Game.GameEvent event : events)
+        {
+            queue.raise(event);
+        }
+        queue.publish();
+    }
+
+    @Test
+    public void testOrderAcrossBatches() throws Exception
+    {
+        GameEventQueue queue = new GameEventQueue();
+        Recorder recorder = new Recorder();
+        assertEquals(0, queue.drain(recorder));
+
+        raiseAll(queue, Game.GameEvent.LOSS_BOO, Game.GameEvent.WIN);
+        raiseAll(queue);
+        raiseAll(queue, Game.GameEvent.LOSS_TIMEUP);
+        raiseAll(queue, Game.GameEvent.LOSS_OUTOFBOUNDS, Game.GameEvent.LOSS_BOO);
+        //Events that haven't been published yet aren't delivered
+        queue.raise(Game.GameEvent.WIN);
+
+        assertEquals(5, queue.drain(recorder));
+        List<Game.GameEvent> expected = Arrays.asList(Game.GameEvent.LOSS_BOO, Game.GameEvent.WIN, Game.GameEvent.LOSS_TIMEUP,
+                Game.GameEvent.LOSS_OUTOFBOUNDS, Game.GameEvent.LOSS_BOO);
+        assertEquals(expected, recorder.events);
+
+        //Each event is delivered once
+        recorder.events.clear();
+        queue.publish();
+        assertEquals(1, queue.drain(recorder));
+        assertEquals(Arrays.asList(Game.GameEvent.WIN), recorder.events);
+        assertEquals(0, queue.drain(recorder));
+    }
+
+    @Test
+    public void testScoreUpdatesAreCoalesced() throws Exception
+    {
+        GameEventQueue queue = new GameEventQueue();
+        Recorder recorder = new Recorder();
+
+        raiseAll(queue, Game.GameEvent.SCORE_UPDATE, Game.GameEvent.SCORE_UPDATE);
+        raiseAll(queue, Game.GameEvent.LOSS_BOO, Game.GameEvent.SCORE_UPDATE);
+        raiseAll(queue, Game.GameEvent.SCORE_UPDATE, Game.GameEvent.WIN);
+
+        //Only the first score update of the drain is delivered, the other events keep their order
+        assertEquals(3, queue.drain(recorder));
+        assertEquals(Arrays.asList(Game.GameEvent.SCORE_UPDATE, Game.GameEvent.LOSS_BOO, Game.GameEvent.WIN), recorder.events);
+
+        //The next drain reports a new score update again
+        recorder.events.clear();
+        raiseAll(queue, Game.GameEvent.WIN, Game.GameEvent.SCORE_UPDATE, Game.GameEvent.SCORE_UPDATE);
+        assertEquals(2, queue.drain(recorder));
+        assertEquals(Arrays.asList(Game.GameEvent.WIN, Game.GameEvent.SCORE_UPDATE), recorder.events);
+    }
+
+    @Test
+    public void testConcurrentDrains() throws Exception
+    {
+        final GameEventQueue queue = new GameEventQueue();
+        final int batches = 20000;
+        //Each batch raises a score update and the events of a fixed cycle, so the order can be checked
+        final Game.GameEvent[] cycle = {Game.GameEvent.WIN, Game.GameEvent.LOSS_BOO, Game.GameEvent.LOSS_TIMEUP};
+        Thread updater = new Thread(new Runnable() {
+            @Override
+            public void run()
+            {
+                for(int i = 0; i < batches; i++)
+                {
+                    queue.raise(Game.GameEvent.SCORE_UPDATE);
+                    queue.raise(cycle[i % cycle.length]);
+                    queue.publish();
+                }
+            }
+        });
+        updater.start();
+
+        final ArrayList<Game.GameEvent> received = new ArrayList<Game.GameEvent>();
+        final int[] scoreUpdates = new int[1];
+        GameEventQueue.Listener listener = new GameEventQueue.Listener() {
+            @Override
+            public void onGameEvent(Game.GameEvent event)
+            {
+                if(event == Game.GameEvent.SCORE_UPDATE)
+                {
+                    scoreUpdates[0]++;
+                }
+                else
+                {
+                    received.add(event);
+                }
+            }
+        };
+        int drains = 0;
+        boolean updating = true;
+        while(updating)
+        {
+            //The last drain starts after the updater is done, so it gets every batch left
+            updating = updater.isAlive();
+            int before = scoreUpdates[0];
+            queue.drain(listener);
+            assertTrue(scoreUpdates[0] - before <= 1);
+            drains++;
+        }
+        updater.join();
+
+        assertEquals(batches, received.size());
+        for(int i = 0; i < batches; i++)
+        {
+            assertEquals(cycle[i % cycle.length], received.get(i));
+        }
+        assertTrue(scoreUpdates[0] <= drains);
+    }
+}
@@ -0,0 +1,89 @@
+package maverick.gleao.wormsworld.logic;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a map read from a MapCache file answers every query like the map it was saved from.
+ */
+public class TestMapCache {
+    private static final int width = 320;
+    private static final int height = 200;
+    private static final int[] rects = {0, 0, 10, 6, 2, 6, 6, 8};
+    private static final int[] otherRects = {0, 0, 16, 4};
+
+    private static MapCache createCache(File dir)
+    {
+        return new MapCache(dir, 1, new ByteArrayInputStream(new byte[]{4, 2}));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        File dir = Files.createTempDirectory("mapcache").toFile();
+        Map map = SyntheticMaps.random(width, height, 8);
+        SpawnIndex index = map.getSpawnIndex(new CollisionShape(rects));
+        MapCache cache = createCache(dir);
+        assertFalse(cache.open());
+        cache.save(map);
+
+        MapCache loaded = createCache(dir);
+        assertTrue(loaded.open());
+        Map copy = loaded.load(null, null);
+        assertEquals(width, copy.getMapWidth());
+        assertEquals(height, copy.getMapHeight());
+        for(int y = -1; y <= height; y++)
+        {
+            for(int x = -1; x <= width; x++)
+            {
+                assertEquals(map.getBlock(x, y), copy.getBlock(x, y));
+            }
+        }
+
+        //The indexes read from the file give the same answers as the ones built from the key
+        CollisionShape[] shapes = {new CollisionShape(rects), new CollisionShape(otherRects)};
+        for(CollisionShape shape : shapes)
+        {
+            for(int x = -5; x < width; x += 3)
+            {
+                for(int y = -5; y < height; y += 2)
+                {
+                    String position = "(" + x + "," + y + ")";
+                    assertEquals(position, shape.collidesWith(map, x, y), shape.collidesWith(copy, x, y));
+                    assertEquals(position, shape.getClearance(map, x, y), shape.getClearance(copy, x, y));
+                    assertEquals(position, shape.getDropDistance(map, x, y), shape.getDropDistance(copy, x, y));
+                    assertEquals(position, shape.findFreeRow(map, x, y), shape.findFreeRow(copy, x, y));
+                }
+            }
+        }
+        ArrayList<Star> stars = map.getStars(new BodyStore(16));
+        ArrayList<Star> copiedStars = copy.getStars(new BodyStore(16));
+        assertEquals(stars.size(), copiedStars.size());
+        for(int i = 0; i < stars.size(); i++)
+        {
+            assertEquals(stars.get(i).getRoundedX(), copiedStars.get(i).getRoundedX());
+            assertEquals(stars.get(i).getRoundedY(), copiedStars.get(i).getRoundedY());
+        }
+
+        //The standing positions of the saved shape are read, not built again
+        assertFalse(copy.hasNewSpawnIndexes());
+        SpawnIndex copiedIndex = copy.getSpawnIndex(new CollisionShape(rects));
+        assertFalse(copy.hasNewSpawnIndexes());
+        assertEquals(index.size(), copiedIndex.size());
+        for(int i = 0; i < index.size(); i++)
+        {
+            assertEquals(index.getX(i), copiedIndex.getX(i));
+            assertEquals(index.getY(i), copiedIndex.getY(i));
+        }
+        copy.getSpawnIndex(new CollisionShape(otherRects));
+        assertTrue(copy.hasNewSpawnIndexes());
+    }
+}
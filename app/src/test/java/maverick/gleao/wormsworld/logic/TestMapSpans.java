@@ -0,0 +1,137 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Color;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the ground and drop queries answered with the map's column spans against a plain scan of the map's pixels.
+ */
+public class TestMapSpans {
+    private static final int width = 160;
+    private static final int height = 120;
+
+    /**
+     * Creates a map with random solid, slippery, star and empty rectangles (so the columns get many spans).
+     */
+    private static Map randomMap(Random rand)
+    {
+        int[] key = SyntheticMaps.emptyKey(width, height);
+        int[] colors = {Color.BLACK, Color.BLACK, Color.CYAN, Color.MAGENTA, Color.WHITE};
+        for(int i = 0; i < 80; i++)
+        {
+            SyntheticMaps.fill(key, width, rand.nextInt(width), rand.nextInt(height), 1 + rand.nextInt(20), 1 + rand.nextInt(12),
+                    colors[rand.nextInt(colors.length)]);
+        }
+        return SyntheticMaps.create(width, height, key);
+    }
+
+    @Test
+    public void testFindGroundAndGap() throws Exception
+    {
+        Random rand = new Random(21);
+        for(int trial = 0; trial < 5; trial++)
+        {
+            Map map = randomMap(rand);
+            for(int x = -1; x <= width; x++)
+            {
+                for(int y = -2; y <= height + 1; y++)
+                {
+                    int ground = -1;
+                    for(int row = Math.max(y, 0); row < height && ground == -1; row++)
+                    {
+                        if(map.isTangible(x, row))
+                        {
+                            ground = row;
+                        }
+                    }
+                    assertEquals("ground " + x + "," + y, ground, map.findGround(x, y));
+
+                    if(x >= 0 && x < width && y >= 0)
+                    {
+                        int gap = y;
+                        while(map.isTangible(x, gap))
+                        {
+                            gap++;
+                        }
+                        assertEquals("gap " + x + "," + y, gap, map.findGap(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRectangleDropDistance() throws Exception
+    {
+        Random rand = new Random(22);
+        for(int trial = 0; trial < 5; trial++)
+        {
+            Map map = randomMap(rand);
+            for(int i = 0; i < 3000; i++)
+            {
+                int[] rect = {rand.nextInt(width + 20) - 10, rand.nextInt(height + 20) - 10, 1 + rand.nextInt(25), 1 + rand.nextInt(15)};
+                int left = rect[0];
+                int top = rect[1];
+                int right = left + rect[2] - 1;
+                int bottom = top + rect[3] - 1;
+                assertEquals("drop " + left + "," + top + " " + rect[2] + "x" + rect[3], dropDistance(map, rect, 0, 0),
+                        map.getDropDistance(left, top, right, bottom));
+            }
+        }
+    }
+
+    @Test
+    public void testShapeQueries() throws Exception
+    {
+        int[] rects = {0, 0, 10, 6, 2, 6, 6, 8, 9, 12, 3, 2};
+        CollisionShape shape = new CollisionShape(rects);
+        Random rand = new Random(23);
+        for(int trial = 0; trial < 5; trial++)
+        {
+            Map map = randomMap(rand);
+            for(int i = 0; i < 3000; i++)
+            {
+                int x = rand.nextInt(width + 20) - 15;
+                int y = rand.nextInt(height + 20) - 20;
+                String where = "shape at " + x + "," + y;
+                int drop = shape.getDropDistance(map, x, y);
+                //Any negative value means the shape is colliding
+                assertEquals(where, dropDistance(map, rects, x, y), (drop < 0 ? -1 : drop));
+
+                int free = y;
+                while(SyntheticMaps.overlaps(map, rects, x, free))
+                {
+                    free++;
+                }
+                assertEquals(where, free, shape.findFreeRow(map, x, y));
+            }
+        }
+    }
+
+    /**
+     * Moves a shape down, one pixel at a time, until it collides with the map (the shapes are smaller than the map).
+     *
+     * @return Number of pixels the shape fell (-1 if it was colliding from the start and Integer.MAX_VALUE if it fell
+     *         below the map).
+     */
+    private static int dropDistance(Map map, int[] rects, int x, int y)
+    {
+        if(SyntheticMaps.overlaps(map, rects, x, y))
+        {
+            return -1;
+        }
+        for(int drop = 0; y + drop <= 2 * height; drop++)
+        {
+            if(SyntheticMaps.overlaps(map, rects, x, y + drop + 1))
+            {
+                return drop;
+            }
+        }
+        return Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,137 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Color;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the stars found on a map against a plain labelling of its groups of STAR pixels.
+ */
+public class TestMapStars {
+    @Test
+    public void testOneStarPerGroup() throws Exception
+    {
+        int width = 150;
+        int height = 90;
+        int[] key = SyntheticMaps.emptyKey(width, height);
+        //Groups touching only by a corner are the same star
+        SyntheticMaps.fill(key, width, 10, 10, 3, 3, Color.MAGENTA);
+        SyntheticMaps.fill(key, width, 13, 13, 3, 3, Color.MAGENTA);
+        //Groups separated by a single column are different stars
+        SyntheticMaps.fill(key, width, 30, 10, 2, 4, Color.MAGENTA);
+        SyntheticMaps.fill(key, width, 33, 10, 2, 4, Color.MAGENTA);
+        //Stars on the map's corners
+        SyntheticMaps.fill(key, width, 0, 0, 2, 2, Color.MAGENTA);
+        SyntheticMaps.fill(key, width, width - 1, height - 1, 1, 1, Color.MAGENTA);
+
+        assertEquals(labelStars(key, width, height), findStars(SyntheticMaps.create(width, height, key)));
+        assertEquals(5, findStars(SyntheticMaps.create(width, height, key)).size());
+    }
+
+    @Test
+    public void testRandomGroups() throws Exception
+    {
+        Random rand = new Random(13);
+        for(int trial = 0; trial < 20; trial++)
+        {
+            int width = 64 + rand.nextInt(200);
+            int height = 32 + rand.nextInt(100);
+            int[] key = SyntheticMaps.emptyKey(width, height);
+            int[] colors = {Color.MAGENTA, Color.MAGENTA, Color.BLACK, Color.CYAN};
+            for(int i = 0; i < 60; i++)
+            {
+                //Small rectangles, most of them stars, some of them overlapping (so the groups get irregular shapes)
+                SyntheticMaps.fill(key, width, rand.nextInt(width), rand.nextInt(height), 1 + rand.nextInt(8), 1 + rand.nextInt(8),
+                        colors[rand.nextInt(colors.length)]);
+            }
+            assertEquals(labelStars(key, width, height), findStars(SyntheticMaps.create(width, height, key)));
+        }
+    }
+
+    /**
+     * Returns the position of each star of a map, as "x,y" strings, sorted.
+     */
+    private static ArrayList<String> findStars(Map map)
+    {
+        ArrayList<String> positions = new ArrayList<String>();
+        for(Star star : map.getStars(new BodyStore(16)))
+        {
+            positions.add(star.getRoundedX() + "," + star.getRoundedY());
+        }
+        Collections.sort(positions);
+        return positions;
+    }
+
+    /**
+     * Labels the 8-connected groups of STAR pixels of a key with a union-find, returning the upper left corner of
+     * each group's bounding box, as "x,y" strings, sorted.
+     */
+    private static ArrayList<String> labelStars(int[] key, int width, int height)
+    {
+        int[] parents = new int[width * height];
+        for(int i = 0; i < parents.length; i++)
+        {
+            parents[i] = i;
+        }
+        for(int y = 0; y < height; y++)
+        {
+            for(int x = 0; x < width; x++)
+            {
+                if(key[y * width + x] != Color.MAGENTA)
+                {
+                    continue;
+                }
+                //Neighbours already visited: left, upper left, above and upper right
+                int[][] neighbours = {{x - 1, y}, {x - 1, y - 1}, {x, y - 1}, {x + 1, y - 1}};
+                for(int[] n : neighbours)
+                {
+                    if(n[0] >= 0 && n[0] < width && n[1] >= 0 && key[n[1] * width + n[0]] == Color.MAGENTA)
+                    {
+                        parents[find(parents, n[1] * width + n[0])] = find(parents, y * width + x);
+                    }
+                }
+            }
+        }
+
+        int[] minX = new int[width * height];
+        int[] minY = new int[width * height];
+        Arrays.fill(minX, Integer.MAX_VALUE);
+        Arrays.fill(minY, Integer.MAX_VALUE);
+        for(int i = 0; i < key.length; i++)
+        {
+            if(key[i] == Color.MAGENTA)
+            {
+                int root = find(parents, i);
+                minX[root] = Math.min(minX[root], i % width);
+                minY[root] = Math.min(minY[root], i / width);
+            }
+        }
+        ArrayList<String> positions = new ArrayList<String>();
+        for(int i = 0; i < key.length; i++)
+        {
+            if(key[i] == Color.MAGENTA && find(parents, i) == i)
+            {
+                positions.add(minX[i] + "," + minY[i]);
+            }
+        }
+        Collections.sort(positions);
+        return positions;
+    }
+
+    private static int find(int[] parents, int i)
+    {
+        while(parents[i] != i)
+        {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+}
@@ -0,0 +1,173 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Color;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the positions drawn by SpawnSession against a pixel by pixel search of the standing positions.
+ */
+public class TestSpawnIndex {
+    private static final int[] rects = {0, 0, 10, 6, 2, 6, 6, 8};
+    private static final int[] otherRects = {0, 0, 16, 4};
+
+    /**
+     * Finds, pixel by pixel, every position where the shape is free and would collide if it moved one pixel down.
+     */
+    private static HashSet<Long> standingPositions(Map map, int[] rects)
+    {
+        HashSet<Long> positions = new HashSet<Long>();
+        for(int x = 0; x < map.getMapWidth(); x++)
+        {
+            for(int y = 0; y < map.getMapHeight(); y++)
+            {
+                if(!SyntheticMaps.overlaps(map, rects, x, y) && SyntheticMaps.overlaps(map, rects, x, y + 1))
+                {
+                    positions.add(toKey(x, y));
+                }
+            }
+        }
+        return positions;
+    }
+
+    private static long toKey(int x, int y)
+    {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    @Test
+    public void testDrawsAreStandingPositions() throws Exception
+    {
+        //Two shapes are placed in turns, so each one's free positions depend on the bodies of the other
+        int[][] shapeRects = {rects, otherRects};
+        CollisionShape[] shapes = {new CollisionShape(rects), new CollisionShape(otherRects)};
+        Random rand = new Random(9);
+        for(int seed = 0; seed < 3; seed++)
+        {
+            Map map = SyntheticMaps.random(300, 200, seed);
+            ArrayList<HashSet<Long>> standing = new ArrayList<HashSet<Long>>();
+            for(int s = 0; s < shapes.length; s++)
+            {
+                standing.add(standingPositions(map, shapeRects[s]));
+                assertEquals(standing.get(s).size(), map.getSpawnIndex(shapes[s]).size());
+            }
+
+            //Bodies are placed, each one away from the ones placed before it, until the map is full
+            SpawnSession session = new SpawnSession(map);
+            BodyStore store = new BodyStore(64);
+            boolean[] full = new boolean[shapes.length];
+            int placed = 0;
+            for(int s = 0; !full[0] || !full[1]; s = 1 - s)
+            {
+                Body body = new ShapeBody(store, 0, 0, shapes[s]);
+                if(!session.draw(body, rand))
+                {
+                    full[s] = true;
+                    continue;
+                }
+                int x = body.getRoundedX();
+                int y = body.getRoundedY();
+                assertTrue("(" + x + "," + y + ") on map " + seed, standing.get(s).contains(toKey(x, y)));
+                assertFalse("(" + x + "," + y + ") on map " + seed, body.colidesWith(session.getBodies(), x, y));
+                session.add(body);
+                placed++;
+            }
+            assertTrue(placed > 20);
+            //Every standing position left is taken
+            for(int s = 0; s < shapes.length; s++)
+            {
+                Body body = new ShapeBody(store, 0, 0, shapes[s]);
+                for(Long position : standing.get(s))
+                {
+                    assertTrue(body.colidesWith(session.getBodies(), (int) (position >> 32), (int) (long) position));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testShapeDrawnAfterBodiesWereAdded() throws Exception
+    {
+        Map map = SyntheticMaps.random(300, 200, 5);
+        CollisionShape shape = new CollisionShape(rects);
+        BodyStore store = new BodyStore(64);
+        SpawnSession session = new SpawnSession(map);
+        //The bodies are added before the session has seen the shape
+        Random rand = new Random(2);
+        for(int i = 0; i < 20; i++)
+        {
+            session.add(new ShapeBody(store, rand.nextInt(300), rand.nextInt(200), new CollisionShape(otherRects)));
+        }
+        Body body = new ShapeBody(store, 0, 0, shape);
+        for(int i = 0; i < 2000; i++)
+        {
+            assertTrue(session.draw(body, rand));
+            assertFalse(body.colidesWith(session.getBodies()));
+        }
+    }
+
+    @Test
+    public void testDrawsAreUniform() throws Exception
+    {
+        //A floor with a raised step: the standing positions are on the floor, on the step and on its edges
+        int width = 80;
+        int height = 40;
+        int[] key = SyntheticMaps.emptyKey(width, height);
+        SyntheticMaps.fill(key, width, 0, 30, width, 10, Color.BLACK);
+        SyntheticMaps.fill(key, width, 30, 22, 20, 8, Color.BLACK);
+        Map map = SyntheticMaps.create(width, height, key);
+        CollisionShape shape = new CollisionShape(rects);
+        SpawnSession session = new SpawnSession(map);
+
+        //A body standing on the floor takes some of the positions
+        Body blocker = new ShapeBody(new BodyStore(1), 5, 16, shape);
+        session.add(blocker);
+        HashSet<Long> free = new HashSet<Long>();
+        for(Long position : standingPositions(map, rects))
+        {
+            int x = (int) (position >> 32);
+            int y = (int) (long) position;
+            if(!blocker.colidesWith(new ShapeBody(new BodyStore(1), x, y, shape)))
+            {
+                free.add(position);
+            }
+        }
+        assertTrue(free.size() > 50 && free.size() < map.getSpawnIndex(shape).size());
+
+        //Pearson's chi-squared test (the bound is about 6 standard deviations above the mean)
+        int drawsPerPosition = 200;
+        int draws = drawsPerPosition * free.size();
+        HashMap<Long, Integer> counts = new HashMap<Long, Integer>();
+        Random rand = new Random(4);
+        Body body = new ShapeBody(new BodyStore(1), 0, 0, shape);
+        for(int i = 0; i < draws; i++)
+        {
+            assertTrue(session.draw(body, rand));
+            long position = toKey(body.getRoundedX(), body.getRoundedY());
+            assertTrue(free.contains(position));
+            Integer count = counts.get(position);
+            counts.put(position, (count == null ? 1 : count + 1));
+        }
+        double chiSquared = 0;
+        for(Long position : free)
+        {
+            Integer count = counts.get(position);
+            assertNotNull("position never drawn", count);
+            double difference = count - drawsPerPosition;
+            chiSquared += difference * difference / drawsPerPosition;
+        }
+        int degrees = free.size() - 1;
+        assertTrue("chi-squared " + chiSquared + " for " + degrees + " degrees of freedom",
+                chiSquared < degrees + 6 * Math.sqrt(2 * degrees));
+    }
+}
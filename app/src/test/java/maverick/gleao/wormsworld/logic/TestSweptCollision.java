@@ -0,0 +1,159 @@
+package maverick.gleao.wormsworld.logic;
+
+import android.graphics.Color;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the stepped and swept collision modes on small hand-made maps.
+ */
+public class TestSweptCollision {
+    private static final int[] rects = {0, 0, 10, 6, 2, 6, 6, 8};
+    private static final int width = 200;
+    private static final int height = 150;
+
+    private final CollisionShape shape = new CollisionShape(rects);
+    private final ArrayList<Body> none = new ArrayList<Body>();
+
+    /**
+     * Creates an empty map with a solid block.
+     */
+    private static Map mapWithBlock(int x, int y, int blockWidth, int blockHeight)
+    {
+        int[] key = SyntheticMaps.emptyKey(width, height);
+        SyntheticMaps.fill(key, width, x, y, blockWidth, blockHeight, Color.BLACK);
+        return SyntheticMaps.create(width, height, key);
+    }
+
+    /**
+     * Creates a body (without gravity or friction), alone on its store, moving at a given velocity.
+     */
+    private ShapeBody createBody(double x, double y, double vx, double vy, Game.CollisionMode mode)
+    {
+        BodyStore store = new BodyStore(1);
+        ShapeBody body = new ShapeBody(store, x, y, shape);
+        store.vx[0] = vx;
+        store.vy[0] = vy;
+        body.setCollisionMode(mode);
+        return body;
+    }
+
+    @Test
+    public void testWallSlide() throws Exception
+    {
+        //Wall from x = 100 to x = 109, over the whole map's height
+        Map map = mapWithBlock(100, 0, 10, height);
+
+        //Moving towards (120, 60): the wall is reached at x = 91
+        ShapeBody stepped = createBody(80, 40, 400, 200, Game.CollisionMode.STEPPED);
+        stepped.updatePos(100, map, none);
+        ShapeBody swept = createBody(80, 40, 400, 200, Game.CollisionMode.SWEPT);
+        swept.updatePos(100, map, none);
+
+        //The stepped body stops on the wall, the swept one slides along it
+        assertEquals(90, stepped.getRoundedX());
+        assertTrue(stepped.getRoundedY() < 60);
+        assertEquals(0, stepped.store.vx[0], 0);
+        assertEquals(0, stepped.store.vy[0], 0);
+
+        assertEquals(90, swept.getRoundedX());
+        assertEquals(60, swept.getRoundedY());
+        assertEquals(0, swept.store.vx[0], 0);
+        assertEquals(200, swept.store.vy[0], 0);
+        assertFalse(swept.colidesWith(map));
+    }
+
+    @Test
+    public void testLanding() throws Exception
+    {
+        //Floor from y = 100 down: the shape's bottom row is 13 pixels below its position
+        Map map = mapWithBlock(0, 100, width, height - 100);
+
+        for(Game.CollisionMode mode : Game.CollisionMode.values())
+        {
+            ShapeBody body = createBody(50, 60, 0, 500, mode);
+            body.updatePos(100, map, none);
+            assertEquals(mode.toString(), 50, body.getRoundedX());
+            assertEquals(mode.toString(), 86, body.getRoundedY());
+            assertEquals(mode.toString(), 0, body.store.vy[0], 0);
+            assertTrue(mode.toString(), body.isOnGround(map));
+        }
+
+        //Landing while moving sideways: the stepped body stops where it touched the floor, the swept one keeps moving
+        ShapeBody stepped = createBody(50, 60, 100, 500, Game.CollisionMode.STEPPED);
+        stepped.updatePos(100, map, none);
+        ShapeBody swept = createBody(50, 60, 100, 500, Game.CollisionMode.SWEPT);
+        swept.updatePos(100, map, none);
+
+        assertEquals(86, stepped.getRoundedY());
+        assertTrue(stepped.getRoundedX() < 60);
+        assertEquals(86, swept.getRoundedY());
+        assertEquals(60, swept.getRoundedX());
+        assertEquals(100, swept.store.vx[0], 0);
+    }
+
+    @Test
+    public void testSweptStopsOnBody() throws Exception
+    {
+        Map map = mapWithBlock(0, 140, width, 10);
+        ShapeBody other = createBody(70, 40, 0, 0, Game.CollisionMode.SWEPT);
+        ArrayList<Body> collidables = new ArrayList<Body>();
+        collidables.add(other);
+
+        ShapeBody body = createBody(50, 40, 300, 0, Game.CollisionMode.SWEPT);
+        body.updatePos(100, map, collidables);
+        ShapeBody stepped = createBody(50, 40, 300, 0, Game.CollisionMode.STEPPED);
+        stepped.updatePos(100, map, collidables);
+
+        //Along a straight line, both modes stop on the last position where the bodies don't intersect (edges may touch)
+        assertEquals(61, body.getRoundedX());
+        assertEquals(stepped.getRoundedX(), body.getRoundedX());
+        assertFalse(body.colidesWith(other));
+        assertTrue(body.colidesWith(other, 62, 40));
+        assertEquals(0, body.store.vx[0], 0);
+    }
+
+    @Test
+    public void testStartInsideMap() throws Exception
+    {
+        //The body starts 4 pixels inside the floor and is pushed out before moving
+        Map map = mapWithBlock(0, 100, width, height - 100);
+        ShapeBody body = createBody(50, 90, 100, 0, Game.CollisionMode.SWEPT);
+        body.updatePos(100, map, none);
+        assertEquals(86, body.getRoundedY());
+        assertEquals(60, body.getRoundedX());
+        assertFalse(body.colidesWith(map));
+
+        //Too deep to be pushed out: the overlapping parts don't stop the movement, so the body isn't stuck
+        Map block = mapWithBlock(40, 40, 60, 60);
+        assertEquals(10, shape.sweep(block, 60, 60, 10, 0));
+        assertEquals(10, shape.sweep(block, 60, 60, 0, 10));
+        assertEquals(10, shape.sweep(block, 60, 60, 0, -10));
+        ShapeBody buried = createBody(60, 60, -100, -100, Game.CollisionMode.SWEPT);
+        buried.updatePos(100, block, none);
+        assertEquals(50, buried.getRoundedX());
+        assertEquals(50, buried.getRoundedY());
+    }
+
+    @Test
+    public void testStartInsideBody() throws Exception
+    {
+        Map map = mapWithBlock(0, 140, width, 10);
+        ShapeBody other = createBody(55, 40, 0, 0, Game.CollisionMode.SWEPT);
+        ArrayList<Body> collidables = new ArrayList<Body>();
+        collidables.add(other);
+        assertTrue(shape.intersects(50, 40, shape, 55, 40));
+
+        //Bodies that already overlap don't block each other
+        ShapeBody body = createBody(50, 40, -100, 0, Game.CollisionMode.SWEPT);
+        body.updatePos(100, map, collidables);
+        assertEquals(40, body.getRoundedX());
+        assertFalse(body.colidesWith(other));
+    }
+}
@@ -0,0 +1,45 @@
+package maverick.gleao.wormsworld.logic;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that a worm collides the same way with and without its sprites.
+ */
+public class TestWorm {
+    @Test
+    public void testFrameWidthMatchesSprites() throws Exception
+    {
+        //The unit tests run from the module's directory, and the sheets have 2 frames (see GamePlayActivity.loadSprites)
+        File[] sheets = {new File("src/main/res/drawable/immobile.png"), new File("src/main/res/drawable/right_immobile.png")};
+        for(File sheet : sheets)
+        {
+            Assume.assumeTrue(sheet.exists());
+            BufferedImage image = ImageIO.read(sheet);
+            assertEquals(sheet.getName(), Worm.frameWidth, image.getWidth() / 2);
+        }
+    }
+
+    @Test
+    public void testHeadlessMirror() throws Exception
+    {
+        Worm worm = new Worm(0, 0);
+        CollisionShape left = worm.getCollisionShape();
+        worm.move(true);
+        CollisionShape right = worm.getCollisionShape();
+
+        //Without sprites, the shape is mirrored within a frame, as on the device
+        assertEquals(0, worm.getSpriteWidth());
+        assertEquals(Worm.frameWidth - 1 - left.getRight(), right.getLeft());
+        assertEquals(Worm.frameWidth - 1 - left.getLeft(), right.getRight());
+        assertEquals(left.getTop(), right.getTop());
+        assertEquals(left.getBottom(), right.getBottom());
+    }
+}